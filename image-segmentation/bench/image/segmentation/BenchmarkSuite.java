@@ -0,0 +1,139 @@
+/*
+ * Runs the benchmarks, java -jar target/benchmarks.jar [jmh options] after mvn -P bench package
+ * the jmh options are those of org.openjdk.jmh.Main (e.g. SegmentationBenchmark, -p size=32,64, -f 3, -l to list), the gc profiler
+ * is always on so the allocation rate (gc.alloc.rate.norm, bytes per operation) is reported next to the throughput
+ * the results are written to jmh-result.csv, or to -rff file, and the time per pixel of ScalingBenchmark is printed by size
+ * the bundled files are read from the working directory, run it from the module or set -Ddata=dir
+*/
+
+package image.segmentation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+public class BenchmarkSuite
+{
+	public static void main(String[] args)
+	{
+		try
+		{
+			CommandLineOptions command = new CommandLineOptions(args);
+			
+			if( command.shouldHelp() || command.shouldList() || command.shouldListProfilers() || command.shouldListResultFormats() )
+			{
+				org.openjdk.jmh.Main.main(args);
+				return;
+			}
+			
+			OptionsBuilder builder = new OptionsBuilder();
+			
+			builder.parent(command).addProfiler(GCProfiler.class);
+			
+			if( !command.getResult().hasValue() )
+			{
+				builder.resultFormat(ResultFormatType.CSV).result("jmh-result.csv");
+			}
+			
+			Options options = builder.build();
+			
+			printScaling(new Runner(options).run());
+		}
+		catch( CommandLineOptionException e )
+		{
+			System.out.println("Error: " + e.getMessage());
+		}
+		catch( RunnerException e )
+		{
+			System.out.println("Error: " + e.getMessage());
+		}
+		catch( IOException e )
+		{
+			System.out.println("Error: " + e.getMessage());
+		}
+	}
+	
+	/*
+	 * one line per benchmark, backend and solver of ScalingBenchmark, with the time per pixel of every size
+	 * a line that stays flat scales linearly with the number of pixels
+	 */
+	private static void printScaling(Collection<RunResult> results)
+	{
+		// benchmark (backend, solver) -> size -> ns per pixel
+		Map<String, Map<Integer, Double>> curves = new TreeMap<String, Map<Integer, Double>>();
+		List<Integer> sizes = new ArrayList<Integer>();
+		
+		for( RunResult r : results )
+		{
+			String name = r.getParams().getBenchmark();
+			
+			if( !name.contains("ScalingBenchmark") )
+			{
+				continue;
+			}
+			
+			int size = Integer.valueOf(r.getParams().getParam("size"));
+			String solver = r.getParams().getParam("solver");
+			String key = name.substring(name.lastIndexOf('.') + 1) + " (" + r.getParams().getParam("backend") + ( solver == null ? "" : ", " + solver ) + ")";
+			// throughput in operations per second
+			double score = r.getPrimaryResult().getScore();
+			
+			if( !curves.containsKey(key) )
+			{
+				curves.put(key, new TreeMap<Integer, Double>());
+			}
+			
+			curves.get(key).put(size, 1e9 / score / ( (double) size * size ));
+			
+			if( !sizes.contains(size) )
+			{
+				sizes.add(size);
+			}
+		}
+		
+		if( curves.isEmpty() )
+		{
+			return;
+		}
+		
+		Collections.sort(sizes);
+		
+		StringBuilder header = new StringBuilder(String.format("%-32s", "ns per pixel"));
+		
+		for( Integer size : sizes )
+		{
+			header.append(String.format(" %10s", size + "^2"));
+		}
+		
+		System.out.println();
+		System.out.println(header);
+		
+		for( Map.Entry<String, Map<Integer, Double>> curve : curves.entrySet() )
+		{
+			StringBuilder line = new StringBuilder(String.format("%-32s", curve.getKey()));
+			
+			for( Integer size : sizes )
+			{
+				Double ns = curve.getValue().get(size);
+				
+				line.append(ns == null ? String.format(" %10s", "-") : String.format(" %10.2f", ns));
+			}
+			
+			System.out.println(line);
+		}
+	}
+}
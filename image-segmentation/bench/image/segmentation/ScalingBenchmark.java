@@ -0,0 +1,95 @@
+package image.segmentation;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * graph construction, solve and minimum cut on synthetic images from 32x32 to 2048x2048, BenchmarkSuite prints the time per pixel by size
+ * only the backends and solvers that finish a 2048x2048 image in seconds are run by default,
+ * -p solver=ek or -p backend=hashset with -p size=32,64 adds the others on the sizes they can handle
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ScalingBenchmark
+{
+	@Param({ "32", "64", "128", "256", "512", "1024", "2048" })
+	public int size;
+	
+	@Param({ "csr", "grid" })
+	public String backend;
+	
+	/*
+	 * the solver is only a parameter of solve, the other benchmarks do not depend on it
+	 */
+	@State(Scope.Benchmark)
+	public static class Solver
+	{
+		@Param({ "dinic", "bk" })
+		public String solver;
+		
+		private Application.Options options;
+		
+		@Setup
+		public void setup()
+		{
+			this.options = new Application.Options();
+			this.options.solver = this.solver;
+		}
+	}
+	
+	private Application.Options options;
+	private PixelCosts costs;
+	private Graph graph, solved;
+	
+	@Setup
+	public void setup() throws IOException
+	{
+		this.options = new Application.Options();
+		this.options.backend = this.backend;
+		this.options.solver = "bk";
+		this.costs = Workload.costs(String.valueOf(this.size));
+		this.graph = this.options.build(this.costs);
+		this.solved = this.options.solve(this.graph);
+	}
+	
+	@Benchmark
+	public Graph build() throws IOException
+	{
+		return this.options.build(this.costs);
+	}
+	
+	@Benchmark
+	public Graph solve(Solver s)
+	{
+		return s.options.solve(this.graph);
+	}
+	
+	@Benchmark
+	public Solution minimumCut()
+	{
+		return this.solved.minimumCut(1);
+	}
+	
+	@Benchmark
+	public BitSet sourceSide()
+	{
+		return this.solved.sourceSide(1);
+	}
+}
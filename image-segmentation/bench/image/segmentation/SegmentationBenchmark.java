@@ -0,0 +1,95 @@
+package image.segmentation;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * graph construction, every solver and the minimum cut on the bundled files, for every graph backend
+ * the solvers work on a copy of the graph, so the graph built once in setup is solved again by every call
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SegmentationBenchmark
+{
+	@Param({ "infile.txt", "JeuDeDonneesDemo1", "JeuDeDonneesDemo2" })
+	public String input;
+	
+	@Param({ "hashset", "csr", "grid" })
+	public String backend;
+	
+	private Application.Options options;
+	private PixelCosts costs;
+	private Graph graph, solved;
+	private int sink;
+	
+	@Setup
+	public void setup() throws IOException
+	{
+		this.options = new Application.Options();
+		this.options.backend = this.backend;
+		this.options.solver = "bk";
+		this.costs = Workload.costs(this.input);
+		this.graph = this.options.build(this.costs);
+		this.sink = this.costs.rows * this.costs.cols + 2;
+		this.solved = this.options.solve(this.graph);
+	}
+	
+	@Benchmark
+	public Graph build() throws IOException
+	{
+		return this.options.build(this.costs);
+	}
+	
+	@Benchmark
+	public Graph edmondsKarp()
+	{
+		return this.graph.edmondsKarp(1, this.sink);
+	}
+	
+	@Benchmark
+	public Graph dinic()
+	{
+		return this.graph.dinic(1, this.sink);
+	}
+	
+	@Benchmark
+	public Graph boykovKolmogorov()
+	{
+		return this.graph.boykovKolmogorov(1, this.sink);
+	}
+	
+	@Benchmark
+	public Graph pushRelabel()
+	{
+		return this.graph.pushRelabel(1, this.sink);
+	}
+	
+	@Benchmark
+	public Solution minimumCut()
+	{
+		return this.solved.minimumCut(1);
+	}
+	
+	@Benchmark
+	public BitSet sourceSide()
+	{
+		return this.solved.sourceSide(1);
+	}
+}
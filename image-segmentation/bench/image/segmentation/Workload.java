@@ -0,0 +1,44 @@
+package image.segmentation;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/*
+ * inputs of the benchmarks: the name of a bundled cost file, or a number for a synthetic square image of that many pixels a side
+ * the synthetic image is a disk and a rectangle lighter than the background with gaussian noise, always the same for a size
+ */
+public class Workload
+{
+	public static PixelCosts costs(String input) throws IOException
+	{
+		if( input.matches("[0-9]+") )
+		{
+			return PixelCosts.read(image(Integer.valueOf(input)), new ThresholdCosts(128, 10));
+		}
+		
+		// the bundled files are in the directory of the module, or in -Ddata=dir
+		return PixelCosts.read(new File(System.getProperty("data", "."), input));
+	}
+	
+	public static BufferedImage image(int size)
+	{
+		BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+		Random random = new Random(size);
+		
+		for( int y = 0; y < size; ++y )
+		{
+			for( int x = 0; x < size; ++x )
+			{
+				double dx = x - size * 0.4, dy = y - size * 0.45;
+				boolean light = dx * dx + dy * dy < size * size / 16.0 || ( x > size * 0.65 && x < size * 0.9 && y > size * 0.1 && y < size * 0.35 );
+				int gray = Math.max(0, Math.min(255, (int) Math.round(( light ? 180 : 70 ) + random.nextGaussian() * 40)));
+				
+				image.setRGB(x, y, ( gray << 16 ) | ( gray << 8 ) | gray);
+			}
+		}
+		
+		return image;
+	}
+}
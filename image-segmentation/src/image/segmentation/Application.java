@@ -3,23 +3,48 @@
  * mvn package
  * java -cp target/Image-segmentation-0.0.1-SNAPSHOT.jar image.segmentation.Application
  * files to be read should be in the base directory of the application
+ * they can be text files, binary files written by CostConverter or images (png, jpg, bmp, gif) whose costs are computed while reading them
  * Execution example
  * enter file to read: infile.txt
  * enter filename to write separated pixels to: outputfile.txt
  * At the end of execution, the application will overwrite existing file or create a new file (if the output file doesn't exist) and write the separated pixels into it
+ * as B / F text, or as an image if the file name ends with .pbm or .png
+ * Options
+ * --graph=hashset (default) stores the graph in a HashSet of edges
+ * --graph=csr stores the graph in compressed sparse row arrays
+ * --graph=grid stores only the capacities of the pixel grid, neighbors are computed from the pixel index
+ * --graph=tiled splits the pixel grid into tiles of --tile=n pixels a side (default 64), push-relabel then solves it tile by tile
+ * --graph=mapped keeps the arcs of the pixel grid outside the java heap, in a memory-mapped file in --spill=dir or the temporary directory
+ * --spill=dir writes the tiles to dir and keeps only --resident=k of them in memory (default: one row of tiles plus one per thread)
+ * --solver=ek (default) Edmonds-Karp, --solver=dinic Dinic, --solver=bk Boykov-Kolmogorov, --solver=pr push-relabel
+ * --solver=ppr parallel push-relabel, --threads=n sets its number of threads (default: number of processors)
+ * --costs=threshold (default) costs of an image from the distance of its gray levels to --threshold=t (default 128) and a constant penalty --lambda=l (default 10)
+ * --costs=potts same with a contrast-sensitive penalty, lambda * exp(-d^2 / (2 sigma^2)) for a gray level difference d, --sigma=s (default 10)
+ * --incremental makes Edmonds-Karp update its residual network in place instead of rebuilding it after every augmentation
+ * --reduce pushes flow straight through the terminal edges of every pixel and removes the pixels whose label is decided by that
+ * before the solver runs, the cut is the same, the graph left is a csr graph whatever --graph is
+ * --coarse=levels solves an image halved levels times and then, going back to full size, only a band of --band=width (default 2) coarse pixels
+ * around the coarse boundary, faster on large images but not exact, see BandedReport
+ * --capacity=int (default) keeps the capacities in ints, --capacity=long in longs for images whose max flow does not fit an int,
+ * --capacity=double in doubles, both solve the pixel grid with Dinic whatever --graph and --solver are
+ * --metrics counts the augmentations, nodes visited by the searches, pushes and relabels of the solvers and times the build, solve
+ * and cut phases, the totals are printed at the end, --metrics=jfr commits them as JFR events instead (see SolverEvents)
 */
 
 package image.segmentation;
 
+import java.awt.image.BufferedImage;
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.HashMap;
+import java.util.BitSet;
 import java.util.Iterator;
-import java.util.Map;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 
 public class Application
 {
@@ -28,7 +53,21 @@ public class Application
 		String filepath = System.getProperty("user.dir");
 		String infile = null;
 		
-		String[] dims = null;
+		PixelCosts costs = null;
+		Options options = new Options();
+		
+		try
+		{
+			for( int i = 0; i < args.length; ++i )
+			{
+				options.parse(args[i]);
+			}
+		}
+		catch( IllegalArgumentException e )
+		{
+			System.out.println("Error: " + e.getMessage());
+			return;
+		}
 		
 		Graph g = null;
 		BufferedReader br = null;
@@ -47,117 +86,90 @@ public class Application
 			}
 			
 			System.out.println("Reading in file: " + infile);
-			br = new BufferedReader(new FileReader(filepath + "/" + infile));
-			String line = br.readLine();
-			dims = line.split(" ");
-			Integer vertex_count = 0;
-			if( dims.length > 0 )
-			{
-				vertex_count = Integer.valueOf(dims[0]) * Integer.valueOf(dims[1]);
-				vertex_count += 2;
-			}
-			
-			System.out.println("vertex count: " + vertex_count);
+			costs = options.read(new File(filepath + "/" + infile));
 			
-			// add vertex_count + 2 nodes (2 - for source and sink)
-			g = new DirectedGraph(vertex_count, true);
-			
-			// assume source = 1 and sink = vertex_count
-			Integer level = 0;
-			Integer node_idx = 2;
-			while( ( line = br.readLine() ) != null )
+			if( options.graph() )
 			{
-				// each blank line indicates a change
-				if( line.length() > 0 )
-				{
-					switch( level )
-					{
-						case 1:
-						{
-							// connect source to all other nodes except sink
-							String[] splitted = line.split("\\s+");
-							for( int i = 0; i < splitted.length; ++i )
-							{
-								Integer capacity = Integer.valueOf(splitted[i]);
-								g.addEdge(1, node_idx, capacity);
-								node_idx++;
-							}
-							break;
-						}
-						case 2:
-						{
-							// connect all nodes except source to sink
-							String[] splitted = line.split("\\s+");
-							for( int i = 0; i < splitted.length; ++i )
-							{
-								Integer capacity = Integer.valueOf(splitted[i]);
-								g.addEdge(node_idx, vertex_count, capacity);
-								node_idx++;
-							}
-							break;
-						}
-						case 3:
-						{
-							// parse horizontal penalties
-							String[] splitted = line.split("\\s+");
-							Integer cur = node_idx, next = 0;
-							for( int i = 0; i < splitted.length; ++i )
-							{
-								Integer capacity = Integer.valueOf(splitted[i]);
-								cur = node_idx + i;
-								next = node_idx + i + 1;
-								// create horizontal edge between cur and next
-								g.addEdge(cur, next, capacity);
-								g.addEdge(next, cur, capacity);
-							}
-							node_idx += splitted.length + 1;
-							break;
-						}
-						case 4:
-						{
-							// parse vertical penalties
-							String[] splitted = line.split("\\s+");
-							Integer cur = node_idx, next = 0;
-							for( int i = 0; i < splitted.length; ++i )
-							{
-								Integer capacity = Integer.valueOf(splitted[i]);
-								cur = node_idx + i;
-								next = node_idx + splitted.length + i;
-								//System.out.println("cur, next: " + cur + ", " + next);
-								g.addEdge(cur, next, capacity);
-								g.addEdge(next, cur, capacity);
-							}
-							node_idx += splitted.length;
-							break;
-						}
-					}
-				}
-				else
-				{
-					node_idx = 2;
-					level++;
-				}
+				g = options.build(costs);
+				System.out.println("vertex count: " + g.nodes().size());
 			}
-			
-			br.close();
 		}
 		catch( IOException e )
 		{
 			System.out.println("Error: " + e.getMessage());
 			e.printStackTrace();
 		}
-		
+
 //		System.out.println("g: " + g.toString());
-		System.out.println("edge count: " + g.edges().size());
+		if( g != null )
+		{
+			System.out.println("edge count: " + g.edgeCount());
+		}
 		
 		long startTime = System.nanoTime();
 		
-		Graph gs = g.edmondsKarp(1, g.nodes().size());
+		Graph gs = null;
+		LabelMap labels = null;
+		BitSet side = null;
+		Long maxflow = null;
+		
+		// same precedence as Options.segment: --coarse, then --reduce, then --capacity
+		if( options.coarse > 0 )
+		{
+			try
+			{
+				labels = options.banded().segment(costs);
+			}
+			catch( IOException e )
+			{
+				System.out.println("Error: " + e.getMessage());
+				return;
+			}
+			
+			side = labels.sourceSide();
+		}
+		else if( options.reduce )
+		{
+			PixelReduction reduction = new PixelReduction(costs);
+			Graph reduced = reduction.graph();
+			
+			System.out.println(reduction.report());
+			gs = options.solve(reduced);
+			labels = reduction.labels(options.sourceSide(gs));
+			side = labels.sourceSide();
+			maxflow = reduction.constant() + gs.maxflow();
+		}
+		else if( !options.capacity.equals("int") )
+		{
+			try
+			{
+				labels = options.segment(costs);
+			}
+			catch( IOException e )
+			{
+				System.out.println("Error: " + e.getMessage());
+				return;
+			}
+			
+			side = labels.sourceSide();
+			// the cut is a minimum one, its value is the max flow
+			maxflow = BandedCut.energy(costs, labels);
+		}
+		else
+		{
+			gs = options.solve(g);
+			side = options.sourceSide(gs);
+			labels = LabelMap.of(side, costs.rows, costs.cols);
+			maxflow = (long) gs.maxflow();
+			g.close();
+			gs.close();
+		}
 		
-		Solution mincut = gs.minimumCut(1);
+		int vertex_count = costs.rows * costs.cols + 2;
+		Solution mincut = Solution.cut(side, vertex_count);
 		
 		mincut.background.remove(1);
-		mincut.foreground.remove(gs.nodes().size());
+		mincut.foreground.remove(vertex_count);
 		
 		long endTime = System.nanoTime();
 		
@@ -165,27 +177,22 @@ public class Application
 		
 		System.out.println("time taken to calculate max flow and set A and B: " + (timeElapsed / 1000000) + "ms");
 		
-		Map<Integer, Character> positions = new HashMap<Integer, Character>();
-		Iterator<Integer> bg = mincut.background.iterator();
-		Iterator<Integer> fg = mincut.foreground.iterator();
-		
-		while( bg.hasNext() )
+		if( maxflow != null )
 		{
-			Integer cur = bg.next();
-			positions.put(cur, 'B');
+			System.out.println("max flow: " + maxflow);
 		}
-		
-		while( fg.hasNext() )
+		else
 		{
-			Integer cur = fg.next();
-			positions.put(cur, 'F');
+			System.out.println("cut value: " + BandedCut.energy(costs, labels));
 		}
-		
-		System.out.println("max flow: " + gs.maxflow());
 		System.out.println("background: " + mincut.background);
 		System.out.println("foreground: " + mincut.foreground);
 		
-		BufferedWriter writer = null;
+		if( options.metrics instanceof SolverCounters )
+		{
+			System.out.println(options.metrics);
+		}
+		
 		String separated = null;
 		
 		try
@@ -200,39 +207,448 @@ public class Application
 			}
 			
 			System.out.println("Writing separated pixels to: " + separated);
-			writer = new BufferedWriter(new FileWriter(filepath + "/" + separated));
-			Integer idx = 0;
-			Integer nl_idx = Integer.valueOf(dims[1]);
+			labels.write(new File(filepath + "/" + separated));
+		}
+		catch( IOException e )
+		{
+			e.printStackTrace();
+		}
+		finally
+		{
+			try
+			{
+				br.close();
+			}
+			catch( IOException e )
+			{}
+		}
+	}
+	
+	/*
+	 * command line settings shared by the interactive and the batch mode, see the top of this file
+	 */
+	public static class Options
+	{
+		public String backend = "hashset";
+		public String solver = "ek";
+		public Boolean incremental = false;
+		public Integer threads = Runtime.getRuntime().availableProcessors();
+		public Integer tile = 64;
+		public String spill = null;
+		public Integer resident = null;
+		public String costFunction = "threshold";
+		public Integer threshold = 128;
+		public Integer lambda = 10;
+		public Double sigma = 10.0;
+		public Integer coarse = 0;
+		public Integer band = 2;
+		public Boolean reduce = false;
+		public SolverMetrics metrics = SolverMetrics.NONE;
+		public String capacity = "int";
+		
+		/*
+		 * false if arg is not one of the options, IllegalArgumentException if it is one with a value that is not
+		 */
+		public boolean parse(String arg)
+		{
+			if( arg.startsWith("--graph=") )
+			{
+				this.backend = choice("graph", arg.substring("--graph=".length()), "hashset", "csr", "grid", "tiled", "mapped");
+			}
+			else if( arg.startsWith("--solver=") )
+			{
+				this.solver = choice("solver", arg.substring("--solver=".length()), "ek", "dinic", "bk", "pr", "ppr");
+			}
+			else if( arg.equals("--incremental") )
+			{
+				this.incremental = true;
+			}
+			else if( arg.startsWith("--threads=") )
+			{
+				this.threads = Integer.valueOf(arg.substring("--threads=".length()));
+			}
+			else if( arg.startsWith("--tile=") )
+			{
+				this.tile = Integer.valueOf(arg.substring("--tile=".length()));
+			}
+			else if( arg.startsWith("--spill=") )
+			{
+				this.spill = arg.substring("--spill=".length());
+			}
+			else if( arg.startsWith("--resident=") )
+			{
+				this.resident = Integer.valueOf(arg.substring("--resident=".length()));
+			}
+			else if( arg.startsWith("--costs=") )
+			{
+				this.costFunction = arg.substring("--costs=".length());
+			}
+			else if( arg.startsWith("--threshold=") )
+			{
+				this.threshold = Integer.valueOf(arg.substring("--threshold=".length()));
+			}
+			else if( arg.startsWith("--lambda=") )
+			{
+				this.lambda = Integer.valueOf(arg.substring("--lambda=".length()));
+			}
+			else if( arg.startsWith("--sigma=") )
+			{
+				this.sigma = Double.valueOf(arg.substring("--sigma=".length()));
+			}
+			else if( arg.startsWith("--coarse=") )
+			{
+				this.coarse = Integer.valueOf(arg.substring("--coarse=".length()));
+			}
+			else if( arg.startsWith("--band=") )
+			{
+				this.band = Integer.valueOf(arg.substring("--band=".length()));
+			}
+			else if( arg.equals("--reduce") )
+			{
+				this.reduce = true;
+			}
+			else if( arg.startsWith("--capacity=") )
+			{
+				this.capacity = choice("capacity", arg.substring("--capacity=".length()), "int", "long", "double");
+			}
+			else if( arg.equals("--metrics") )
+			{
+				this.metrics = new SolverCounters();
+			}
+			else if( arg.equals("--metrics=jfr") )
+			{
+				this.metrics = new SolverEvents();
+			}
+			else
+			{
+				return false;
+			}
+			
+			return true;
+		}
+		
+		/*
+		 * value if it is one of the allowed ones, a typo would otherwise run a default in its place
+		 */
+		private static String choice(String option, String value, String... allowed)
+		{
+			StringBuilder sb = new StringBuilder();
+			
+			for( int i = 0; i < allowed.length; ++i )
+			{
+				if( allowed[i].equals(value) )
+				{
+					return value;
+				}
+				
+				sb.append(i == 0 ? "" : i == allowed.length - 1 ? " or " : ", ").append(allowed[i]);
+			}
+			
+			throw new IllegalArgumentException("unknown " + option + " " + value + ", use " + sb);
+		}
+		
+		/*
+		 * cost layers of a text, binary or image file
+		 */
+		public PixelCosts read(File file) throws IOException
+		{
+			String name = file.getName();
 			
-			for( Map.Entry<Integer, Character> pos : positions.entrySet() )
+			if( name.indexOf('.') != -1 && ImageIO.getImageReadersBySuffix(name.substring(name.lastIndexOf('.') + 1)).hasNext() )
 			{
-				if( idx >= nl_idx && idx % nl_idx == 0 )
+				BufferedImage image = ImageIO.read(file);
+				
+				if( image == null )
 				{
-					writer.newLine();
+					throw new IOException(name + " is not an image that can be read");
 				}
 				
-				writer.write(pos.getValue() + " ");
+				return PixelCosts.read(image, this.costs());
+			}
+			
+			return PixelCosts.read(file);
+		}
+		
+		/*
+		 * cost layers of the content of a file received in memory, an image is recognized by its first bytes instead of its name
+		 */
+		public PixelCosts read(byte[] data) throws IOException
+		{
+			return this.read(data, Integer.MAX_VALUE);
+		}
+		
+		/*
+		 * same as read(byte[]) with at most pixels pixels, an image is checked from its header before it is decoded
+		 * and a cost file can not hold more values than its size allows (see PixelCosts.read)
+		 */
+		public PixelCosts read(byte[] data, long pixels) throws IOException
+		{
+			ImageInputStream stream = ImageIO.createImageInputStream(new ByteArrayInputStream(data));
+			PixelCosts costs;
+			
+			try
+			{
+				Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
 				
-				idx++;
+				if( !readers.hasNext() )
+				{
+					costs = PixelCosts.read(data);
+				}
+				else
+				{
+					ImageReader reader = readers.next();
+					
+					try
+					{
+						reader.setInput(stream);
+						
+						if( (long) reader.getWidth(0) * reader.getHeight(0) > pixels )
+						{
+							throw new IOException("the image is " + reader.getWidth(0) + "x" + reader.getHeight(0) + ", more than " + pixels + " pixels");
+						}
+						
+						costs = PixelCosts.read(reader.read(0), this.costs());
+					}
+					finally
+					{
+						reader.dispose();
+					}
+				}
+			}
+			finally
+			{
+				stream.close();
 			}
 			
-			writer.newLine();
+			if( (long) costs.rows * costs.cols > pixels )
+			{
+				throw new IOException("the input is " + costs.rows + "x" + costs.cols + ", more than " + pixels + " pixels");
+			}
 			
-//			System.out.println(positions.toString());
+			return costs;
 		}
-		catch( IOException e )
+		
+		private CostFunction costs()
 		{
-			e.printStackTrace();
+			return this.costFunction.equals("potts") ? new PottsCosts(this.threshold, this.lambda, this.sigma) : new ThresholdCosts(this.threshold, this.lambda);
 		}
-		finally
+		
+		public Graph build(PixelCosts costs) throws IOException
+		{
+			long startTime = System.nanoTime();
+			Graph g = this.fill(costs);
+			
+			this.metrics.phase("build", System.nanoTime() - startTime);
+			
+			return g;
+		}
+		
+		private Graph fill(PixelCosts costs) throws IOException
+		{
+			File directory = this.spill == null ? null : new File(this.spill);
+			
+			if( this.backend.equals("tiled") )
+			{
+				int tiles = ( costs.cols + this.tile - 1 ) / this.tile;
+				
+				return costs.fill(new TiledGrid(costs.rows, costs.cols, this.tile, directory, this.resident == null ? tiles + this.threads : this.resident));
+			}
+			
+			if( this.backend.equals("mapped") )
+			{
+				return costs.fill(new MappedGridGraph(costs.rows, costs.cols, directory));
+			}
+			
+			return Application.build(costs, this.backend);
+		}
+		
+		/*
+		 * true if the image is solved as the Graph made by build, false for the modes that make graphs of their own
+		 * (--coarse, --reduce and --capacity=long or double), which only go through segment
+		 * when several are given --coarse wins over --reduce, which wins over --capacity
+		 */
+		public boolean graph()
+		{
+			return this.coarse == 0 && !this.reduce && this.capacity.equals("int");
+		}
+		
+		/*
+		 * labels of the pixels of an image: coarse-to-fine with --coarse, on the graph left by the reduction with --reduce,
+		 * on a grid of longs or doubles with --capacity=long or double, on the whole graph otherwise, in this order of precedence
+		 */
+		public LabelMap segment(PixelCosts costs) throws IOException
 		{
+			if( this.coarse > 0 )
+			{
+				return this.banded().segment(costs);
+			}
+			
+			if( this.reduce )
+			{
+				PixelReduction reduction = new PixelReduction(costs);
+				
+				return reduction.labels(this.sourceSide(this.solve(reduction.graph())));
+			}
+			
+			if( !this.capacity.equals("int") )
+			{
+				return this.wide(costs);
+			}
+			
+			return LabelMap.of(this.cut(this.build(costs)), costs.rows, costs.cols);
+		}
+		
+		/*
+		 * labels from the pixel grid with long or double capacities, solved by the Dinic of the same type
+		 */
+		private LabelMap wide(PixelCosts costs)
+		{
+			long startTime = System.nanoTime();
+			BitSet side;
+			
+			if( this.capacity.equals("long") )
+			{
+				LongGrid grid = new LongGrid(costs);
+				
+				this.metrics.phase("build", System.nanoTime() - startTime);
+				startTime = System.nanoTime();
+				new LongDinic(this.metrics).maxflow(grid, 0, grid.nodeCount() - 1);
+				this.metrics.phase("solve", System.nanoTime() - startTime);
+				startTime = System.nanoTime();
+				side = grid.sourceSide();
+			}
+			else
+			{
+				DoubleGrid grid = new DoubleGrid(costs);
+				DoubleDinic solver = new DoubleDinic(this.metrics);
+				
+				this.metrics.phase("build", System.nanoTime() - startTime);
+				startTime = System.nanoTime();
+				solver.maxflow(grid, 0, grid.nodeCount() - 1);
+				this.metrics.phase("solve", System.nanoTime() - startTime);
+				startTime = System.nanoTime();
+				side = grid.sourceSide(solver.epsilon());
+			}
+			
+			this.metrics.phase("cut", System.nanoTime() - startTime);
+			
+			return LabelMap.of(side, costs.rows, costs.cols);
+		}
+		
+		/*
+		 * coarse-to-fine segmentation with the levels and band of --coarse and --band
+		 */
+		public BandedCut banded()
+		{
+			return new BandedCut(this, this.coarse, this.band);
+		}
+		
+		public Graph solve(Graph g)
+		{
+			long startTime = System.nanoTime();
+			Graph gs = this.run(g.metrics(this.metrics));
+			
+			this.metrics.phase("solve", System.nanoTime() - startTime);
+			
+			return gs;
+		}
+		
+		private Graph run(Graph g)
+		{
+			Integer sink = g.nodes().size();
+			
+			if( this.solver.equals("dinic") )
+			{
+				return g.dinic(1, sink);
+			}
+			else if( this.solver.equals("bk") )
+			{
+				return g.boykovKolmogorov(1, sink);
+			}
+			else if( this.solver.equals("pr") )
+			{
+				return g.pushRelabel(1, sink);
+			}
+			else if( this.solver.equals("ppr") )
+			{
+				return g.parallelPushRelabel(1, sink, this.threads);
+			}
+			
+			return g.edmondsKarp(1, sink, this.incremental);
+		}
+		
+		/*
+		 * source side of the minimum cut of g, g and its solved copy are closed once the cut is known
+		 */
+		public BitSet cut(Graph g)
+		{
+			Graph gs = null;
+			
 			try
 			{
-				br.close();
-				writer.close();
+				gs = this.solve(g);
+				
+				return this.sourceSide(gs);
 			}
-			catch( IOException e )
-			{}
+			finally
+			{
+				g.close();
+				
+				if( gs != null )
+				{
+					gs.close();
+				}
+			}
+		}
+		
+		/*
+		 * source side of the cut of a solved graph, timed as the cut phase
+		 */
+		public BitSet sourceSide(Graph gs)
+		{
+			long startTime = System.nanoTime();
+			BitSet side = gs.sourceSide(1);
+			
+			this.metrics.phase("cut", System.nanoTime() - startTime);
+			
+			return side;
+		}
+	}
+	
+	/*
+	 * build the graph from cost layers read with PixelCosts.read
+	 * backend is one of hashset, csr, grid, tiled or mapped
+	 */
+	public static Graph build(PixelCosts costs, String backend) throws IOException
+	{
+		return costs.fill(create(costs.rows, costs.cols, backend));
+	}
+	
+	/*
+	 * empty graph for a rows x cols image
+	 */
+	private static Graph create(Integer rows, Integer cols, String backend) throws IOException
+	{
+		// rows * cols pixels + 2 nodes (source and sink)
+		Integer vertex_count = rows * cols + 2;
+		
+		if( backend.equals("csr") )
+		{
+			return new CSRGraph(vertex_count);
+		}
+		else if( backend.equals("grid") )
+		{
+			return new GridGraph(rows, cols);
+		}
+		else if( backend.equals("tiled") )
+		{
+			return new TiledGrid(rows, cols, 64);
+		}
+		else if( backend.equals("mapped") )
+		{
+			return new MappedGridGraph(rows, cols);
 		}
+		
+		return new DirectedGraph(vertex_count, true);
 	}
 }
@@ -0,0 +1,19 @@
+package image.segmentation;
+
+/*
+ * arcs of a flow network without their capacities, shared by the int, long and double residual networks
+ * nodes are numbered 0 .. nodeCount() - 1, node `i` is graph node `i + 1`
+ * the arcs leaving node `u` are numbered firstArc(u) .. endArc(u) - 1 and every arc has a reverse twin
+ */
+public interface ArcNetwork
+{
+	public int nodeCount();
+	
+	public int firstArc(int u);
+	
+	public int endArc(int u);
+	
+	public int head(int arc);
+	
+	public int twin(int arc);
+}
@@ -0,0 +1,289 @@
+package image.segmentation;
+
+import java.io.IOException;
+import java.util.BitSet;
+
+/*
+ * coarse-to-fine segmentation (banded graph cuts)
+ * the cost layers are halved in both dimensions levels times, a coarse pixel taking the sum of the terminal costs of its 2x2 block
+ * and the sum of the penalties crossing to the next block, and the coarsest image is solved exactly
+ * going back up one level at a time, only the pixels whose block lies within band coarse pixels of the coarse boundary are solved again,
+ * the others keep the label of their block and the penalties towards them are added to the terminal edges of the band
+ * this is not exact: a region thinner than a coarse pixel can be lost, BandedReport measures the difference with the exact cut
+ */
+public class BandedCut
+{
+	private Application.Options options;
+	private int levels, band;
+	
+	// pixels solved at the finest level by the last call to segment
+	private int solved;
+	
+	/*
+	 * the coarsest graph is built and solved as set by options, the bands are csr graphs solved by the same solver
+	 */
+	public BandedCut(Application.Options options, int levels, int band)
+	{
+		if( levels < 0 || band < 0 )
+		{
+			throw new IllegalArgumentException("levels and band can not be negative");
+		}
+		
+		this.options = options;
+		this.levels = levels;
+		this.band = band;
+	}
+	
+	public LabelMap segment(PixelCosts costs) throws IOException
+	{
+		return this.segment(costs, this.levels);
+	}
+	
+	private LabelMap segment(PixelCosts costs, int level) throws IOException
+	{
+		if( level == 0 || costs.rows < 2 || costs.cols < 2 )
+		{
+			BitSet side = this.options.cut(this.options.build(costs));
+			
+			this.solved = costs.rows * costs.cols;
+			
+			return LabelMap.of(side, costs.rows, costs.cols);
+		}
+		
+		LabelMap coarse = this.segment(downsample(costs), level - 1);
+		
+		return this.refine(costs, coarse);
+	}
+	
+	public int solved()
+	{
+		return this.solved;
+	}
+	
+	/*
+	 * the layers of an image half as large, rounded up
+	 */
+	public static PixelCosts downsample(PixelCosts costs)
+	{
+		int rows = ( costs.rows + 1 ) / 2, cols = ( costs.cols + 1 ) / 2;
+		PixelCosts half = new PixelCosts(rows, cols);
+		
+		for( int r = 0; r < costs.rows; ++r )
+		{
+			for( int c = 0; c < costs.cols; ++c )
+			{
+				int p = r * costs.cols + c, q = ( r / 2 ) * cols + c / 2;
+				
+				half.source[q] += costs.source[p];
+				half.sink[q] += costs.sink[p];
+				
+				// only the penalties between two blocks are kept, the ones inside a block are never cut at this level
+				if( c + 1 < costs.cols && c % 2 == 1 )
+				{
+					half.horizontal[( r / 2 ) * ( cols - 1 ) + c / 2] += costs.horizontal[r * ( costs.cols - 1 ) + c];
+				}
+				
+				if( r + 1 < costs.rows && r % 2 == 1 )
+				{
+					half.vertical[q] += costs.vertical[p];
+				}
+			}
+		}
+		
+		return half;
+	}
+	
+	/*
+	 * solve the pixels of the band around the boundary of the coarse labels, the others take the label of their block
+	 */
+	private LabelMap refine(PixelCosts costs, LabelMap coarse) throws IOException
+	{
+		boolean[] free = this.band(coarse);
+		int rows = costs.rows, cols = costs.cols;
+		LabelMap labels = new LabelMap(rows, cols);
+		// node of every pixel of the band, 0 for the fixed pixels
+		int[] node = new int[rows * cols];
+		int count = 0;
+		
+		for( int r = 0; r < rows; ++r )
+		{
+			for( int c = 0; c < cols; ++c )
+			{
+				int p = r * cols + c, q = ( r / 2 ) * coarse.cols() + c / 2;
+				
+				if( free[q] )
+				{
+					node[p] = count + 2;
+					count++;
+				}
+				else
+				{
+					labels.setBackground(p, coarse.isBackground(q));
+				}
+			}
+		}
+		
+		this.solved = count;
+		
+		if( count == 0 )
+		{
+			return labels;
+		}
+		
+		int sink = count + 2;
+		int[] source = new int[count], drain = new int[count];
+		Graph g = new CSRGraph(sink);
+		
+		for( int p = 0; p < rows * cols; ++p )
+		{
+			if( node[p] != 0 )
+			{
+				source[node[p] - 2] += costs.source[p];
+				drain[node[p] - 2] += costs.sink[p];
+			}
+		}
+		
+		for( int r = 0; r < rows; ++r )
+		{
+			for( int c = 0; c + 1 < cols; ++c )
+			{
+				int p = r * cols + c;
+				
+				this.link(g, labels, node, source, drain, p, p + 1, costs.horizontal[r * ( cols - 1 ) + c]);
+			}
+		}
+		
+		for( int p = 0; p < costs.vertical.length; ++p )
+		{
+			this.link(g, labels, node, source, drain, p, p + cols, costs.vertical[p]);
+		}
+		
+		for( int k = 0; k < count; ++k )
+		{
+			g.addEdge(1, k + 2, source[k]);
+			g.addEdge(k + 2, sink, drain[k]);
+		}
+		
+		BitSet side = this.options.solve(g).sourceSide(1);
+		
+		for( int p = 0; p < rows * cols; ++p )
+		{
+			if( node[p] != 0 )
+			{
+				labels.setBackground(p, side.get(node[p]));
+			}
+		}
+		
+		return labels;
+	}
+	
+	/*
+	 * the penalty between pixels p and q: an edge both ways if both are in the band,
+	 * a terminal edge of the one in the band if the other is fixed, since the penalty is paid when it takes the other label
+	 */
+	private void link(Graph g, LabelMap labels, int[] node, int[] source, int[] drain, int p, int q, int penalty)
+	{
+		if( node[p] != 0 && node[q] != 0 )
+		{
+			g.addEdge(node[p], node[q], penalty);
+			g.addEdge(node[q], node[p], penalty);
+		}
+		else if( node[p] != 0 )
+		{
+			( labels.isBackground(q) ? source : drain )[node[p] - 2] += penalty;
+		}
+		else if( node[q] != 0 )
+		{
+			( labels.isBackground(p) ? source : drain )[node[q] - 2] += penalty;
+		}
+	}
+	
+	/*
+	 * coarse pixels within band pixels (horizontally, vertically or diagonally) of a pixel with a neighbor of the other label
+	 */
+	private boolean[] band(LabelMap coarse)
+	{
+		int rows = coarse.rows(), cols = coarse.cols();
+		boolean[] edge = new boolean[rows * cols];
+		
+		for( int r = 0; r < rows; ++r )
+		{
+			for( int c = 0; c < cols; ++c )
+			{
+				int p = r * cols + c;
+				boolean b = coarse.isBackground(p);
+				
+				edge[p] = ( c > 0 && coarse.isBackground(p - 1) != b ) || ( c + 1 < cols && coarse.isBackground(p + 1) != b )
+					|| ( r > 0 && coarse.isBackground(p - cols) != b ) || ( r + 1 < rows && coarse.isBackground(p + cols) != b );
+			}
+		}
+		
+		// a square of side 2 band + 1 around every boundary pixel, as a dilation along the rows then along the columns
+		return this.dilate(this.dilate(edge, rows, cols, 1, cols), cols, rows, cols, 1);
+	}
+	
+	/*
+	 * mark the cells within band cells of a marked cell along lines of length cells, step apart, the lines starting stride apart
+	 */
+	private boolean[] dilate(boolean[] marked, int lines, int length, int step, int stride)
+	{
+		boolean[] out = new boolean[marked.length];
+		
+		for( int l = 0; l < lines; ++l )
+		{
+			int start = l * stride;
+			
+			// distance to the last marked cell before, then after
+			for( int i = 0, d = Integer.MAX_VALUE; i < length; ++i )
+			{
+				d = marked[start + i * step] ? 0 : d == Integer.MAX_VALUE ? d : d + 1;
+				out[start + i * step] = d <= this.band;
+			}
+			
+			for( int i = length - 1, d = Integer.MAX_VALUE; i >= 0; --i )
+			{
+				d = marked[start + i * step] ? 0 : d == Integer.MAX_VALUE ? d : d + 1;
+				out[start + i * step] |= d <= this.band;
+			}
+		}
+		
+		return out;
+	}
+	
+	/*
+	 * value of the cut given by labels: the terminal edge a pixel loses and the penalties between pixels of different labels
+	 * a background pixel is on the source side and pays its sink cost, a foreground pixel its source cost
+	 */
+	public static long energy(PixelCosts costs, LabelMap labels)
+	{
+		long e = 0;
+		
+		for( int p = 0; p < costs.source.length; ++p )
+		{
+			e += labels.isBackground(p) ? costs.sink[p] : costs.source[p];
+		}
+		
+		for( int r = 0; r < costs.rows; ++r )
+		{
+			for( int c = 0; c + 1 < costs.cols; ++c )
+			{
+				int p = r * costs.cols + c;
+				
+				if( labels.isBackground(p) != labels.isBackground(p + 1) )
+				{
+					e += costs.horizontal[r * ( costs.cols - 1 ) + c];
+				}
+			}
+		}
+		
+		for( int p = 0; p < costs.vertical.length; ++p )
+		{
+			if( labels.isBackground(p) != labels.isBackground(p + costs.cols) )
+			{
+				e += costs.vertical[p];
+			}
+		}
+		
+		return e;
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Difference between the coarse-to-fine and the exact segmentation
+ * java -cp target/classes image.segmentation.BandedReport [--coarse=levels] [--band=width] [options] file...
+ * every file is solved exactly, then coarse-to-fine with 1 up to levels levels (default 3), the options are those of Application
+ * for every run the pixels solved at full size, the value of the cut against the max flow, the pixels labeled differently
+ * and the times are reported
+*/
+
+package image.segmentation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class BandedReport
+{
+	public static void main(String[] args)
+	{
+		Application.Options options = new Application.Options();
+		List<String> files = new ArrayList<String>();
+		
+		try
+		{
+			for( int i = 0; i < args.length; ++i )
+			{
+				if( !options.parse(args[i]) )
+				{
+					files.add(args[i]);
+				}
+			}
+		}
+		catch( IllegalArgumentException e )
+		{
+			System.out.println("Error: " + e.getMessage());
+			return;
+		}
+		
+		int levels = options.coarse > 0 ? options.coarse : 3;
+		
+		System.out.println(String.format("%-24s %10s %7s %6s %10s %10s %8s %10s %10s %10s", "file", "pixels", "levels", "band", "max flow", "cut", "excess", "different", "exact (ms)", "time (ms)"));
+		
+		for( String file : files )
+		{
+			PixelCosts costs = null;
+			LabelMap exact = null;
+			Integer maxflow = null;
+			long exactTime = 0;
+			
+			try
+			{
+				costs = options.read(new File(file));
+				
+				long startTime = System.nanoTime();
+				Graph g = options.build(costs);
+				Graph gs = options.solve(g);
+				
+				exact = LabelMap.of(gs.sourceSide(1), costs.rows, costs.cols);
+				g.close();
+				gs.close();
+				exactTime = System.nanoTime() - startTime;
+				maxflow = gs.maxflow();
+			}
+			catch( IOException e )
+			{
+				System.out.println("Error: " + e.getMessage());
+				continue;
+			}
+			
+			int pixels = costs.rows * costs.cols;
+			
+			for( int l = 1; l <= levels; ++l )
+			{
+				BandedCut banded = new BandedCut(options, l, options.band);
+				LabelMap labels = null;
+				long startTime = System.nanoTime();
+				
+				try
+				{
+					labels = banded.segment(costs);
+				}
+				catch( IOException e )
+				{
+					System.out.println("Error: " + e.getMessage());
+					break;
+				}
+				
+				long time = System.nanoTime() - startTime;
+				long cut = BandedCut.energy(costs, labels);
+				int different = 0;
+				
+				for( int p = 0; p < pixels; ++p )
+				{
+					if( labels.isBackground(p) != exact.isBackground(p) )
+					{
+						different++;
+					}
+				}
+				
+				System.out.println(String.format("%-24s %10d %7d %5.1f%% %10d %10d %7.2f%% %10d %10.1f %10.1f", file, pixels, l, 100.0 * banded.solved() / Math.max(1, pixels), maxflow, cut, maxflow == 0 ? 0.0 : 100.0 * ( cut - maxflow ) / maxflow, different, exactTime / 1e6, time / 1e6));
+			}
+		}
+	}
+}
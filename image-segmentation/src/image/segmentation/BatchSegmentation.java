@@ -0,0 +1,282 @@
+/*
+ * Segmentation of many files without prompts
+ * java -cp target/classes image.segmentation.BatchSegmentation [--output=dir] [--format=text|pbm|png] [--jobs=n] [options] path...
+ * a path is a file, a directory (the files directly in it) or a pattern on file names such as 'data/*.txt'
+ * the files are segmented at the same time by --jobs=n workers (default: number of processors), the options are those of Application
+ * with --coarse=levels the files are segmented coarse-to-fine and the max flow column holds the value of the cut found
+ * every cut is written to dir (default: the directory of the input file) under the input file name followed by .out, .pbm or .png
+ * and is not taken for an input when the same directory is segmented again
+ * the time spent reading, solving (building the graph included) and writing every file is printed at the end
+*/
+
+package image.segmentation;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+public class BatchSegmentation
+{
+	/*
+	 * what happened to one file, times in nanoseconds
+	 */
+	private static class Result
+	{
+		String file;
+		int pixels;
+		// the value of the cut in the coarse-to-fine mode, the same as the max flow otherwise
+		Long maxflow;
+		long read, solve, write;
+		String error;
+	}
+	
+	public static void main(String[] args)
+	{
+		final Application.Options options = new Application.Options();
+		String output = null;
+		String format = "text";
+		Integer jobs = Runtime.getRuntime().availableProcessors();
+		List<File> files = new ArrayList<File>();
+		
+		try
+		{
+			for( int i = 0; i < args.length; ++i )
+			{
+				if( args[i].startsWith("--output=") )
+				{
+					output = args[i].substring("--output=".length());
+				}
+				else if( args[i].startsWith("--format=") )
+				{
+					format = args[i].substring("--format=".length());
+				}
+				else if( args[i].startsWith("--jobs=") )
+				{
+					jobs = Integer.valueOf(args[i].substring("--jobs=".length()));
+				}
+				else if( !options.parse(args[i]) )
+				{
+					try
+					{
+						files.addAll(expand(args[i]));
+					}
+					catch( IOException e )
+					{
+						System.out.println("Error: " + e.getMessage());
+					}
+				}
+			}
+		}
+		catch( IllegalArgumentException e )
+		{
+			System.out.println("Error: " + e.getMessage());
+			return;
+		}
+		
+		if( output != null )
+		{
+			new File(output).mkdirs();
+		}
+		
+		final String extension = format.equals("png") ? ".png" : format.equals("pbm") ? ".pbm" : ".out";
+		
+		// the queue is bounded, once it is full the main thread runs the next file itself instead of queuing more
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(jobs, jobs, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(jobs), new ThreadPoolExecutor.CallerRunsPolicy());
+		List<Future<Result>> results = new ArrayList<Future<Result>>();
+		long startTime = System.nanoTime();
+		
+		for( final File file : files )
+		{
+			final File target = new File(output == null ? file.getParentFile() : new File(output), file.getName() + extension);
+			
+			results.add(pool.submit(new Callable<Result>()
+			{
+				@Override
+				public Result call()
+				{
+					return segment(options, file, target);
+				}
+			}));
+		}
+		
+		pool.shutdown();
+		
+		System.out.println(String.format("%-32s %10s %10s %10s %10s %10s %10s", "file", "pixels", "max flow", "read (ms)", "solve (ms)", "write (ms)", "total (ms)"));
+		
+		long busy = 0;
+		int failed = 0;
+		
+		for( Future<Result> f : results )
+		{
+			Result r = null;
+			
+			try
+			{
+				r = f.get();
+			}
+			catch( InterruptedException e )
+			{
+				Thread.currentThread().interrupt();
+				break;
+			}
+			catch( ExecutionException e )
+			{
+				System.out.println("Error: " + e.getCause());
+				failed++;
+				continue;
+			}
+			
+			if( r.error != null )
+			{
+				System.out.println(String.format("%-32s %s", r.file, "Error: " + r.error));
+				failed++;
+				continue;
+			}
+			
+			long total = r.read + r.solve + r.write;
+			busy += total;
+			
+			System.out.println(String.format("%-32s %10d %10d %10.1f %10.1f %10.1f %10.1f", r.file, r.pixels, r.maxflow, r.read / 1e6, r.solve / 1e6, r.write / 1e6, total / 1e6));
+		}
+		
+		long elapsed = System.nanoTime() - startTime;
+		
+		System.out.println(String.format("%d files, %d failed, %d jobs: %.1f ms elapsed, %.1f ms of work", files.size(), failed, jobs, elapsed / 1e6, busy / 1e6));
+		
+		if( options.metrics instanceof SolverCounters )
+		{
+			System.out.println(options.metrics);
+		}
+	}
+	
+	/*
+	 * read, solve and write one file, errors are reported in the result instead of stopping the batch
+	 */
+	private static Result segment(Application.Options options, File file, File target)
+	{
+		Result r = new Result();
+		
+		r.file = file.getPath();
+		
+		try
+		{
+			long t0 = System.nanoTime();
+			PixelCosts costs = options.read(file);
+			// the modes without a Graph from build make their graphs inside segment, so the build is counted as solve time in every mode
+			long t1 = System.nanoTime(), t2;
+			LabelMap labels;
+			
+			if( !options.graph() )
+			{
+				labels = options.segment(costs);
+				t2 = System.nanoTime();
+				r.maxflow = BandedCut.energy(costs, labels);
+			}
+			else
+			{
+				Graph g = options.build(costs);
+				Graph gs = options.solve(g);
+				labels = LabelMap.of(options.sourceSide(gs), costs.rows, costs.cols);
+				t2 = System.nanoTime();
+				r.maxflow = (long) gs.maxflow();
+				g.close();
+				gs.close();
+			}
+			
+			labels.write(target);
+			
+			r.pixels = costs.rows * costs.cols;
+			r.read = t1 - t0;
+			r.solve = t2 - t1;
+			r.write = System.nanoTime() - t2;
+		}
+		catch( IOException e )
+		{
+			r.error = e.getMessage();
+		}
+		catch( RuntimeException e )
+		{
+			r.error = e.toString();
+		}
+		
+		return r;
+	}
+	
+	/*
+	 * files named by a path: the file itself, the files of a directory or the files matching a pattern
+	 * the cuts a previous run wrote next to its inputs are left out of directories and patterns, a file named after another
+	 * file of the same directory followed by .out, .pbm or .png, so x.png does not come back as x.png.png
+	 */
+	static List<File> expand(String path) throws IOException
+	{
+		List<File> files = new ArrayList<File>();
+		File f = new File(path);
+		
+		if( f.isFile() )
+		{
+			files.add(f);
+			return files;
+		}
+		
+		File directory = f;
+		String glob = "*";
+		
+		if( !f.isDirectory() )
+		{
+			if( path.indexOf('*') == -1 && path.indexOf('?') == -1 && path.indexOf('[') == -1 && path.indexOf('{') == -1 )
+			{
+				throw new IOException(path + " is not a file, a directory or a pattern");
+			}
+			
+			directory = f.getParentFile() == null ? new File(".") : f.getParentFile();
+			glob = f.getName();
+		}
+		
+		DirectoryStream<Path> stream = Files.newDirectoryStream(directory.toPath(), glob);
+		
+		try
+		{
+			for( Path p : stream )
+			{
+				if( Files.isRegularFile(p) && !isOutput(p) )
+				{
+					files.add(p.toFile());
+				}
+			}
+		}
+		finally
+		{
+			stream.close();
+		}
+		
+		Collections.sort(files);
+		
+		return files;
+	}
+	
+	private static boolean isOutput(Path p)
+	{
+		String name = p.getFileName().toString();
+		
+		for( String extension : new String[] { ".out", ".pbm", ".png" } )
+		{
+			if( name.endsWith(extension) && Files.isRegularFile(p.resolveSibling(name.substring(0, name.length() - extension.length()))) )
+			{
+				return true;
+			}
+		}
+		
+		return false;
+	}
+}
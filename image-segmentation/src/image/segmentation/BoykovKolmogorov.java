@@ -0,0 +1,474 @@
+package image.segmentation;
+
+/*
+ * Boykov-Kolmogorov max flow
+ * grows a search tree from the source and one from the sink, augments when they touch,
+ * then repairs the trees (adoption of orphans) instead of starting a new search from scratch
+ * the distance / timestamp heuristic keeps the trees shallow when choosing new parents
+ * the trees are kept when maxflow returns, so after capacities were changed from outside (see changed)
+ * resolve continues from them instead of searching the whole network again
+ */
+public class BoykovKolmogorov implements FlowSolver
+{
+	private static final int FREE = 0, SOURCE = 1, SINK = 2;
+	
+	// parent markers for roots and nodes that lost their parent
+	private static final int TERMINAL = -1, ORPHAN = -2, NONE = -3;
+	
+	private static final int INFINITE = Integer.MAX_VALUE;
+	
+	private ResidualNetwork network;
+	private int source, sink;
+	
+	private int[] tree;
+	// arc from a node to its parent in the tree
+	private int[] parent;
+	private int[] timestamp;
+	private int[] dist;
+	private int time;
+	
+	// fifo of active nodes
+	private int[] active;
+	private boolean[] queued;
+	private int activeHead, activeCount;
+	
+	private int[] orphans;
+	private int orphanCount;
+	
+	// arc of the node being grown to continue from, the arcs before it have been dealt with already
+	private int resume;
+	
+	private SolverMetrics metrics;
+	// nodes the trees took in during the current run
+	private int grown;
+	
+	public BoykovKolmogorov()
+	{
+		this(SolverMetrics.NONE);
+	}
+	
+	public BoykovKolmogorov(SolverMetrics metrics)
+	{
+		this.metrics = metrics;
+	}
+	
+	@Override
+	public int maxflow(ResidualNetwork network, int source, int sink)
+	{
+		int n = network.nodeCount();
+		
+		this.network = network;
+		this.source = source;
+		this.sink = sink;
+		this.tree = new int[n];
+		this.parent = new int[n];
+		this.timestamp = new int[n];
+		this.dist = new int[n];
+		this.time = 0;
+		this.active = new int[n];
+		this.queued = new boolean[n];
+		this.activeHead = this.activeCount = 0;
+		this.orphans = new int[n];
+		this.orphanCount = 0;
+		
+		for( int i = 0; i < n; ++i )
+		{
+			this.parent[i] = NONE;
+		}
+		
+		this.tree[source] = SOURCE;
+		this.tree[sink] = SINK;
+		this.parent[source] = this.parent[sink] = TERMINAL;
+		this.activate(source);
+		this.activate(sink);
+		
+		return this.run();
+	}
+	
+	/*
+	 * the residual capacity of an arc or of its twin was changed from outside after maxflow returned
+	 * a node next to the arc joins a tree or becomes active if the arc opens a new path,
+	 * a tree arc that ran out of capacity turns its child into an orphan
+	 */
+	public void changed(int arc)
+	{
+		this.update(arc);
+		this.update(this.network.twin(arc));
+	}
+	
+	/*
+	 * flow pushed to get back to a maximum flow after calls to changed
+	 */
+	public int resolve()
+	{
+		this.time++;
+		this.adopt();
+		
+		return this.run();
+	}
+	
+	private void update(int a)
+	{
+		ResidualNetwork net = this.network;
+		int u = net.head(net.twin(a)), v = net.head(a);
+		
+		if( net.residual(a) > 0 )
+		{
+			if( this.tree[u] == SOURCE && this.tree[v] == FREE )
+			{
+				this.attach(v, SOURCE, net.twin(a), u);
+			}
+			else if( this.tree[u] == FREE && this.tree[v] == SINK )
+			{
+				this.attach(u, SINK, a, v);
+			}
+			else if( this.tree[u] == SOURCE && this.tree[v] == SINK )
+			{
+				// the trees touch, growing from either end finds the arc, the source and sink have too many arcs to scan
+				this.activate(v != this.sink ? v : u);
+			}
+			
+			return;
+		}
+		
+		if( this.tree[v] == SOURCE && this.parent[v] == net.twin(a) )
+		{
+			this.orphan(v);
+		}
+		else if( this.tree[u] == SINK && this.parent[u] == a )
+		{
+			this.orphan(u);
+		}
+	}
+	
+	private void attach(int u, int side, int arc, int p)
+	{
+		this.tree[u] = side;
+		this.parent[u] = arc;
+		this.timestamp[u] = this.timestamp[p];
+		this.dist[u] = this.dist[p] + 1;
+		this.activate(u);
+	}
+	
+	private int run()
+	{
+		int total = 0;
+		int cur = -1;
+		
+		this.grown = 0;
+		
+		while( true )
+		{
+			if( cur == -1 || this.tree[cur] == FREE )
+			{
+				if( ( cur = this.nextActive() ) == -1 )
+				{
+					break;
+				}
+				
+				this.resume = this.network.firstArc(cur);
+			}
+			
+			int bridge = this.grow(cur);
+			
+			if( bridge == -1 )
+			{
+				// nothing left to grow from this node
+				cur = -1;
+				continue;
+			}
+			
+			this.time++;
+			total += this.augment(bridge);
+			this.adopt();
+		}
+		
+		this.metrics.search(this.grown);
+		
+		return total;
+	}
+	
+	private void activate(int u)
+	{
+		if( this.queued[u] )
+		{
+			return;
+		}
+		
+		int n = this.active.length;
+		
+		this.active[(this.activeHead + this.activeCount) % n] = u;
+		this.activeCount++;
+		this.queued[u] = true;
+	}
+	
+	private int nextActive()
+	{
+		while( this.activeCount > 0 )
+		{
+			int u = this.active[this.activeHead];
+			
+			this.activeHead = (this.activeHead + 1) % this.active.length;
+			this.activeCount--;
+			this.queued[u] = false;
+			
+			if( this.tree[u] != FREE )
+			{
+				return u;
+			}
+		}
+		
+		return -1;
+	}
+	
+	/*
+	 * extend the tree of u through its arcs, starting where the last call stopped
+	 * returns an arc from the source tree to the sink tree if the trees touch, -1 otherwise
+	 */
+	private int grow(int u)
+	{
+		ResidualNetwork net = this.network;
+		int side = this.tree[u];
+		
+		for( int a = this.resume, end = net.endArc(u); a < end; this.resume = ++a )
+		{
+			int v = net.head(a);
+			int capacity = side == SOURCE ? net.residual(a) : net.residual(net.twin(a));
+			
+			if( capacity <= 0 )
+			{
+				continue;
+			}
+			
+			if( this.tree[v] == FREE )
+			{
+				this.tree[v] = side;
+				this.parent[v] = net.twin(a);
+				this.timestamp[v] = this.timestamp[u];
+				this.dist[v] = this.dist[u] + 1;
+				this.activate(v);
+				this.grown++;
+			}
+			else if( this.tree[v] != side )
+			{
+				return side == SOURCE ? a : net.twin(a);
+			}
+		}
+		
+		return -1;
+	}
+	
+	/*
+	 * push the bottleneck along source -> bridge -> sink, saturated tree arcs make orphans
+	 */
+	private int augment(int bridge)
+	{
+		ResidualNetwork net = this.network;
+		int minflow = net.residual(bridge);
+		int length = 1;
+		
+		// source side, tree arcs point from child to parent, flow goes parent to child
+		for( int v = net.head(net.twin(bridge)); v != this.source; v = net.head(this.parent[v]) )
+		{
+			minflow = Math.min(minflow, net.residual(net.twin(this.parent[v])));
+			length++;
+		}
+		
+		// sink side, flow goes child to parent
+		for( int v = net.head(bridge); v != this.sink; v = net.head(this.parent[v]) )
+		{
+			minflow = Math.min(minflow, net.residual(this.parent[v]));
+			length++;
+		}
+		
+		this.metrics.augmentation(length);
+		
+		net.push(bridge, minflow);
+		
+		for( int v = net.head(net.twin(bridge)); v != this.source; )
+		{
+			int a = this.parent[v];
+			int next = net.head(a);
+			
+			net.push(net.twin(a), minflow);
+			
+			if( net.residual(net.twin(a)) == 0 )
+			{
+				this.orphan(v);
+			}
+			
+			v = next;
+		}
+		
+		for( int v = net.head(bridge); v != this.sink; )
+		{
+			int a = this.parent[v];
+			int next = net.head(a);
+			
+			net.push(a, minflow);
+			
+			if( net.residual(a) == 0 )
+			{
+				this.orphan(v);
+			}
+			
+			v = next;
+		}
+		
+		return minflow;
+	}
+	
+	private void orphan(int u)
+	{
+		this.parent[u] = ORPHAN;
+		this.orphans[this.orphanCount++] = u;
+	}
+	
+	/*
+	 * find new parents for the orphans, or free them together with their subtrees
+	 */
+	private void adopt()
+	{
+		ResidualNetwork net = this.network;
+		
+		while( this.orphanCount > 0 )
+		{
+			int u = this.orphans[--this.orphanCount];
+			int side = this.tree[u];
+			int best = NONE;
+			int bestDist = INFINITE;
+			
+			for( int a = net.firstArc(u), end = net.endArc(u); a < end; ++a )
+			{
+				int v = net.head(a);
+				int capacity = side == SOURCE ? net.residual(net.twin(a)) : net.residual(a);
+				
+				if( this.tree[v] != side || capacity <= 0 )
+				{
+					continue;
+				}
+				
+				int d = this.origin(v);
+				
+				if( d != INFINITE && d < bestDist )
+				{
+					best = a;
+					bestDist = d;
+				}
+			}
+			
+			if( best != NONE )
+			{
+				this.parent[u] = best;
+				this.timestamp[u] = this.time;
+				this.dist[u] = bestDist + 1;
+				continue;
+			}
+			
+			// no valid parent, u leaves the tree
+			int root = NONE;
+			
+			for( int a = net.firstArc(u), end = net.endArc(u); a < end; ++a )
+			{
+				int v = net.head(a);
+				
+				if( this.tree[v] == FREE )
+				{
+					continue;
+				}
+				
+				if( this.tree[v] != side )
+				{
+					// the other tree may grow into u now, a terminal has too many arcs to be scanned again so u is attached to it directly
+					int across = side == SOURCE ? net.residual(a) : net.residual(net.twin(a));
+					
+					if( across <= 0 )
+					{
+						continue;
+					}
+					
+					if( v == this.source || v == this.sink )
+					{
+						root = a;
+					}
+					else
+					{
+						this.activate(v);
+					}
+					
+					continue;
+				}
+				
+				int capacity = side == SOURCE ? net.residual(net.twin(a)) : net.residual(a);
+				
+				if( capacity > 0 )
+				{
+					this.activate(v);
+				}
+				
+				int p = this.parent[v];
+				
+				if( p >= 0 && net.head(p) == u )
+				{
+					this.orphan(v);
+				}
+			}
+			
+			this.tree[u] = FREE;
+			this.parent[u] = NONE;
+			
+			if( root != NONE )
+			{
+				this.attach(u, side == SOURCE ? SINK : SOURCE, root, net.head(root));
+			}
+		}
+	}
+	
+	/*
+	 * distance from v to its root, INFINITE if v hangs under an orphan
+	 * nodes checked during this augmentation are stamped so the walk stops early next time
+	 */
+	private int origin(int v)
+	{
+		ResidualNetwork net = this.network;
+		int d = 0;
+		int j = v;
+		
+		while( true )
+		{
+			if( this.timestamp[j] == this.time )
+			{
+				d += this.dist[j];
+				break;
+			}
+			
+			int a = this.parent[j];
+			
+			if( a == TERMINAL )
+			{
+				this.timestamp[j] = this.time;
+				this.dist[j] = 0;
+				break;
+			}
+			
+			if( a < 0 )
+			{
+				return INFINITE;
+			}
+			
+			d++;
+			j = net.head(a);
+		}
+		
+		// stamp the nodes on the path with their distance
+		int k = d;
+		for( j = v; this.timestamp[j] != this.time; j = net.head(this.parent[j]) )
+		{
+			this.timestamp[j] = this.time;
+			this.dist[j] = k;
+			k--;
+		}
+		
+		return d;
+	}
+}
@@ -0,0 +1,446 @@
+package image.segmentation;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+/*
+ * flow network stored in compressed sparse row arrays
+ * edges are collected in primitive lists while the graph is built and turned into
+ * offsets / heads / residuals / twins arrays the first time they are needed
+ * every edge (u, v) becomes a forward arc u -> v holding c - f and a reverse arc v -> u holding f,
+ * so the residual graph is always available and never has to be rebuilt
+ * parallel edges are kept as separate arcs
+ */
+public class CSRGraph extends FlowNetwork
+{
+	private int size;
+	
+	// edges as they were added
+	private int edgeCount;
+	private int[] edgeTail, edgeHead, edgeCapacity, edgeFlow;
+	
+	// csr arrays, valid while compiled is true
+	private boolean compiled;
+	private int[] offsets;
+	private int[] heads;
+	private int[] residuals;
+	private int[] twins;
+	// edge an arc belongs to, -1 for reverse arcs
+	private int[] arcEdge;
+	// forward arc of each edge
+	private int[] edgeArc;
+	
+	public CSRGraph()
+	{
+		this(0);
+	}
+	
+	public CSRGraph(Integer n)
+	{
+		super();
+		
+		if( n < 0 )
+		{
+			throw new IllegalArgumentException("number of nodes `n` can not be negative");
+		}
+		
+		this.size = n;
+		this.edgeCount = 0;
+		this.edgeTail = new int[16];
+		this.edgeHead = new int[16];
+		this.edgeCapacity = new int[16];
+		this.edgeFlow = new int[16];
+		this.compiled = false;
+	}
+	
+	public CSRGraph(Graph g)
+	{
+		this(0);
+		
+		this.maxflow = g.maxflow;
+		this.metrics = g.metrics;
+		
+		if( g instanceof CSRGraph )
+		{
+			CSRGraph c = (CSRGraph) g;
+			
+			c.sync();
+			this.size = c.size;
+			this.edgeCount = c.edgeCount;
+			this.edgeTail = c.edgeTail.clone();
+			this.edgeHead = c.edgeHead.clone();
+			this.edgeCapacity = c.edgeCapacity.clone();
+			this.edgeFlow = c.edgeFlow.clone();
+			
+			return;
+		}
+		
+		Iterator<Integer> nodes = g.nodeIterator();
+		
+		while( nodes.hasNext() )
+		{
+			this.size = Math.max(this.size, nodes.next());
+		}
+		
+		Iterator<Edge> edges = g.edgeIterator();
+		
+		while( edges.hasNext() )
+		{
+			Edge e = edges.next();
+			
+			this.append(e.source(), e.destination(), e.flow() == null ? 0 : e.flow(), e.capacity() == null ? 0 : e.capacity());
+		}
+	}
+	
+	/*
+	 * build the csr arrays from the edge lists
+	 */
+	@Override
+	public CSRGraph compile()
+	{
+		if( this.compiled )
+		{
+			return this;
+		}
+		
+		int arcs = 2 * this.edgeCount;
+		
+		this.offsets = new int[this.size + 1];
+		this.heads = new int[arcs];
+		this.residuals = new int[arcs];
+		this.twins = new int[arcs];
+		this.arcEdge = new int[arcs];
+		this.edgeArc = new int[this.edgeCount];
+		
+		for( int e = 0; e < this.edgeCount; ++e )
+		{
+			this.offsets[this.edgeTail[e] + 1]++;
+			this.offsets[this.edgeHead[e] + 1]++;
+		}
+		
+		for( int u = 0; u < this.size; ++u )
+		{
+			this.offsets[u + 1] += this.offsets[u];
+		}
+		
+		int[] fill = new int[this.size];
+		System.arraycopy(this.offsets, 0, fill, 0, this.size);
+		
+		for( int e = 0; e < this.edgeCount; ++e )
+		{
+			int u = this.edgeTail[e], v = this.edgeHead[e];
+			int a = fill[u]++;
+			int b = fill[v]++;
+			
+			this.heads[a] = v;
+			this.heads[b] = u;
+			this.twins[a] = b;
+			this.twins[b] = a;
+			this.residuals[a] = this.edgeCapacity[e] - this.edgeFlow[e];
+			this.residuals[b] = this.edgeFlow[e];
+			this.arcEdge[a] = e;
+			this.arcEdge[b] = -1;
+			this.edgeArc[e] = a;
+		}
+		
+		this.compiled = true;
+		
+		return this;
+	}
+	
+	@Override
+	protected CSRGraph copy()
+	{
+		return new CSRGraph(this);
+	}
+	
+	/*
+	 * copy the flows held by the residual arrays back into the edge lists
+	 */
+	private void sync()
+	{
+		if( !this.compiled )
+		{
+			return;
+		}
+		
+		for( int e = 0; e < this.edgeCount; ++e )
+		{
+			this.edgeFlow[e] = this.edgeCapacity[e] - this.residuals[this.edgeArc[e]];
+		}
+	}
+	
+	/*
+	 * structural change, the csr arrays have to be rebuilt
+	 */
+	private void invalidate()
+	{
+		this.sync();
+		this.compiled = false;
+	}
+	
+	private void append(int nodeU, int nodeV, int flow, int capacity)
+	{
+		if( this.edgeCount == this.edgeTail.length )
+		{
+			this.reserve(2 * this.edgeCount);
+		}
+		
+		this.edgeTail[this.edgeCount] = nodeU - 1;
+		this.edgeHead[this.edgeCount] = nodeV - 1;
+		this.edgeFlow[this.edgeCount] = flow;
+		this.edgeCapacity[this.edgeCount] = capacity;
+		this.edgeCount++;
+	}
+	
+	private void reserve(int edges)
+	{
+		if( edges <= this.edgeTail.length )
+		{
+			return;
+		}
+		
+		this.edgeTail = Arrays.copyOf(this.edgeTail, edges);
+		this.edgeHead = Arrays.copyOf(this.edgeHead, edges);
+		this.edgeCapacity = Arrays.copyOf(this.edgeCapacity, edges);
+		this.edgeFlow = Arrays.copyOf(this.edgeFlow, edges);
+	}
+	
+	/*
+	 * add the edges of the cost layers of an input file straight to the edge lists, in the order of PixelCosts.fill
+	 */
+	public CSRGraph load(PixelCosts costs)
+	{
+		int n = costs.rows * costs.cols;
+		int sink = n + 2;
+		
+		if( this.size != n + 2 )
+		{
+			throw new IllegalArgumentException("a " + costs.rows + "x" + costs.cols + " image needs " + ( n + 2 ) + " nodes, the graph has " + this.size);
+		}
+		
+		this.invalidate();
+		this.reserve(this.edgeCount + 2 * ( n + costs.horizontal.length + costs.vertical.length ));
+		
+		for( int p = 0; p < n; ++p )
+		{
+			this.append(1, p + 2, 0, costs.source[p]);
+		}
+		
+		for( int p = 0; p < n; ++p )
+		{
+			this.append(p + 2, sink, 0, costs.sink[p]);
+		}
+		
+		for( int r = 0, i = 0; r < costs.rows; ++r )
+		{
+			for( int c = 0; c + 1 < costs.cols; ++c, ++i )
+			{
+				int cur = r * costs.cols + c + 2;
+				
+				this.append(cur, cur + 1, 0, costs.horizontal[i]);
+				this.append(cur + 1, cur, 0, costs.horizontal[i]);
+			}
+		}
+		
+		for( int i = 0; i < costs.vertical.length; ++i )
+		{
+			int cur = i + 2;
+			
+			this.append(cur, cur + costs.cols, 0, costs.vertical[i]);
+			this.append(cur + costs.cols, cur, 0, costs.vertical[i]);
+		}
+		
+		return this;
+	}
+	
+	/*
+	 * nodes are numbered 1 .. n, so only the next node can be added
+	 */
+	@Override
+	public Graph addNode(Integer node)
+	{
+		if( this.contains(node) )
+		{
+			return this;
+		}
+		
+		if( node != this.size + 1 )
+		{
+			throw new IllegalArgumentException("nodes of a CSRGraph are numbered 1 .. n, next node is " + (this.size + 1));
+		}
+		
+		this.invalidate();
+		this.size++;
+		
+		return this;
+	}
+	
+	@Override
+	public Graph removeNode(Integer node)
+	{
+		throw new UnsupportedOperationException("nodes can not be removed from a CSRGraph");
+	}
+	
+	@Override
+	public Graph addEdge(Integer nodeU, Integer nodeV, Integer flow, Integer capacity)
+	{
+		if( !this.contains(nodeU) || !this.contains(nodeV) )
+		{
+			throw new IndexOutOfBoundsException("The nodes must be present in the graph");
+		}
+		
+		if( flow > capacity )
+		{
+			throw new IllegalArgumentException("Flow can not exceed capacity");
+		}
+		
+		this.invalidate();
+		this.append(nodeU, nodeV, flow, capacity);
+		
+		return this;
+	}
+	
+	@Override
+	public Graph setEdge(Integer nodeU, Integer nodeV, Integer flow, Integer capacity)
+	{
+		int a = this.arc(nodeU, nodeV);
+		
+		if( a == -1 )
+		{
+			return this.addEdge(nodeU, nodeV, flow, capacity);
+		}
+		
+		if( flow > capacity )
+		{
+			throw new IllegalArgumentException("Flow can not exceed capacity");
+		}
+		
+		// update the arcs in place, no rebuild needed
+		int e = this.arcEdge[a];
+		
+		this.edgeCapacity[e] = capacity;
+		this.edgeFlow[e] = flow;
+		this.residuals[a] = capacity - flow;
+		this.residuals[this.twins[a]] = flow;
+		
+		return this;
+	}
+	
+	@Override
+	public Graph removeEdge(Integer nodeU, Integer nodeV)
+	{
+		int a = this.arc(nodeU, nodeV);
+		
+		if( a == -1 )
+		{
+			return this;
+		}
+		
+		int e = this.arcEdge[a];
+		
+		this.invalidate();
+		
+		// move the last edge into the hole
+		int last = --this.edgeCount;
+		
+		this.edgeTail[e] = this.edgeTail[last];
+		this.edgeHead[e] = this.edgeHead[last];
+		this.edgeCapacity[e] = this.edgeCapacity[last];
+		this.edgeFlow[e] = this.edgeFlow[last];
+		
+		return this;
+	}
+	
+	@Override
+	public Graph createNetwork()
+	{
+		for( int e = 0; e < this.edgeCount; ++e )
+		{
+			this.edgeFlow[e] = 0;
+		}
+		
+		if( this.compiled )
+		{
+			for( int e = 0; e < this.edgeCount; ++e )
+			{
+				int a = this.edgeArc[e];
+				
+				this.residuals[a] = this.edgeCapacity[e];
+				this.residuals[this.twins[a]] = 0;
+			}
+		}
+		
+		return this;
+	}
+	
+	@Override
+	protected boolean isEdge(int arc)
+	{
+		return this.arcEdge[arc] != -1;
+	}
+	
+	@Override
+	protected int capacity(int arc)
+	{
+		int e = this.arcEdge[arc];
+		
+		return e == -1 ? 0 : this.edgeCapacity[e];
+	}
+	
+	@Override
+	protected void store(int arc, int capacity, int residual)
+	{
+		int e = this.arcEdge[arc];
+		
+		if( e != -1 )
+		{
+			this.edgeCapacity[e] = capacity;
+		}
+		
+		this.residuals[arc] = residual;
+	}
+	
+	@Override
+	public int nodeCount()
+	{
+		return this.size;
+	}
+	
+	@Override
+	public int firstArc(int u)
+	{
+		return this.offsets[u];
+	}
+	
+	@Override
+	public int endArc(int u)
+	{
+		return this.offsets[u + 1];
+	}
+	
+	@Override
+	public int head(int arc)
+	{
+		return this.heads[arc];
+	}
+	
+	@Override
+	public int twin(int arc)
+	{
+		return this.twins[arc];
+	}
+	
+	@Override
+	public int residual(int arc)
+	{
+		return this.residuals[arc];
+	}
+	
+	@Override
+	public void push(int arc, int flow)
+	{
+		this.residuals[arc] -= flow;
+		this.residuals[this.twins[arc]] += flow;
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * Conversion of input files to the binary format of PixelCosts
+ * java -cp target/classes image.segmentation.CostConverter [--width=1|2|4] infile outfile
+ * the capacities are written with the given number of bytes each, by default the smallest that holds all of them
+ * Application reads both formats, the binary one is memory-mapped instead of parsed
+*/
+
+package image.segmentation;
+
+import java.io.File;
+import java.io.IOException;
+
+public class CostConverter
+{
+	public static void main(String[] args)
+	{
+		Integer width = null;
+		String infile = null, outfile = null;
+		
+		for( int i = 0; i < args.length; ++i )
+		{
+			if( args[i].startsWith("--width=") )
+			{
+				width = Integer.valueOf(args[i].substring("--width=".length()));
+			}
+			else if( infile == null )
+			{
+				infile = args[i];
+			}
+			else
+			{
+				outfile = args[i];
+			}
+		}
+		
+		if( infile == null || outfile == null )
+		{
+			System.out.println("usage: CostConverter [--width=1|2|4] infile outfile");
+			return;
+		}
+		
+		try
+		{
+			long startTime = System.nanoTime();
+			PixelCosts costs = PixelCosts.read(new File(infile));
+			
+			if( width == null )
+			{
+				width = costs.width();
+			}
+			
+			costs.write(new File(outfile), width);
+			
+			System.out.println(infile + " (" + new File(infile).length() + " bytes) -> " + outfile + " (" + new File(outfile).length() + " bytes), "
+					+ costs.rows + "x" + costs.cols + " pixels, " + width + " byte capacities, " + ( System.nanoTime() - startTime ) / 1000000 + "ms");
+		}
+		catch( IOException e )
+		{
+			System.out.println("Error: " + e.getMessage());
+		}
+	}
+}
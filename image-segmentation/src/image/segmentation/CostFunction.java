@@ -0,0 +1,23 @@
+package image.segmentation;
+
+/*
+ * capacities of the graph of an image, computed from the gray levels (0 .. 255) of its pixels
+ * the pixels on the source side of the cut are the background
+ */
+public interface CostFunction
+{
+	/*
+	 * capacity of the edge from the source, paid if the pixel ends up in the foreground
+	 */
+	public int source(int gray);
+	
+	/*
+	 * capacity of the edge to the sink, paid if the pixel ends up in the background
+	 */
+	public int sink(int gray);
+	
+	/*
+	 * capacity of the edges between two neighbor pixels, paid if they are separated
+	 */
+	public int penalty(int gray, int neighbor);
+}
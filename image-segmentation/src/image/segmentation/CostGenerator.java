@@ -0,0 +1,229 @@
+/*
+ * Synthetic input files of any size
+ * java -cp target/classes image.segmentation.CostGenerator [--kind=noise|blobs|thin|adversarial] [--seed=n] [--binary] rows cols outfile
+ * the file is written in the text format read by Application, or in the binary format of PixelCosts with --binary
+ * noise: every capacity drawn at random, blobs: a few large smooth regions, thin: lines one or two pixels wide that the penalties
+ * try to erase, adversarial: penalties a thousand times larger than the terminal edges, with all the source capacity in the left half
+ * of the image and all the sink capacity in the right half, so every unit of flow crosses the grid
+ * the same kind, size and seed always give the same file
+*/
+
+package image.segmentation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+public class CostGenerator
+{
+	public static final String[] KINDS = new String[] { "noise", "blobs", "thin", "adversarial" };
+	
+	public static void main(String[] args)
+	{
+		String kind = "noise";
+		long seed = 1;
+		boolean binary = false;
+		String[] rest = new String[3];
+		int count = 0;
+		
+		for( int i = 0; i < args.length; ++i )
+		{
+			if( args[i].startsWith("--kind=") )
+			{
+				kind = args[i].substring("--kind=".length());
+			}
+			else if( args[i].startsWith("--seed=") )
+			{
+				seed = Long.valueOf(args[i].substring("--seed=".length()));
+			}
+			else if( args[i].equals("--binary") )
+			{
+				binary = true;
+			}
+			else if( count < rest.length )
+			{
+				rest[count++] = args[i];
+			}
+		}
+		
+		if( count < rest.length )
+		{
+			System.out.println("usage: CostGenerator [--kind=noise|blobs|thin|adversarial] [--seed=n] [--binary] rows cols outfile");
+			return;
+		}
+		
+		try
+		{
+			long startTime = System.nanoTime();
+			PixelCosts costs = generate(kind, Integer.valueOf(rest[0]), Integer.valueOf(rest[1]), seed);
+			File file = new File(rest[2]);
+			
+			if( binary )
+			{
+				costs.write(file);
+			}
+			else
+			{
+				costs.writeText(file);
+			}
+			
+			System.out.println(kind + " " + costs.rows + "x" + costs.cols + " -> " + rest[2] + " (" + file.length() + " bytes), " + ( System.nanoTime() - startTime ) / 1000000 + "ms");
+		}
+		catch( IOException e )
+		{
+			System.out.println("Error: " + e.getMessage());
+		}
+		catch( IllegalArgumentException e )
+		{
+			System.out.println("Error: " + e.getMessage());
+		}
+	}
+	
+	public static PixelCosts generate(String kind, int rows, int cols, long seed)
+	{
+		PixelCosts costs = new PixelCosts(rows, cols);
+		Random random = new Random(seed);
+		
+		if( kind.equals("noise") )
+		{
+			fill(costs.source, random, 0, 20);
+			fill(costs.sink, random, 0, 20);
+			fill(costs.horizontal, random, 0, 10);
+			fill(costs.vertical, random, 0, 10);
+		}
+		else if( kind.equals("blobs") )
+		{
+			blobs(costs, random);
+		}
+		else if( kind.equals("thin") )
+		{
+			thin(costs, random);
+		}
+		else if( kind.equals("adversarial") )
+		{
+			for( int p = 0; p < rows * cols; ++p )
+			{
+				( p % cols < cols / 2 ? costs.source : costs.sink )[p] = 1 + random.nextInt(20);
+			}
+			
+			fill(costs.horizontal, random, 10000, 20000);
+			fill(costs.vertical, random, 10000, 20000);
+		}
+		else
+		{
+			throw new IllegalArgumentException("unknown kind " + kind + ", use noise, blobs, thin or adversarial");
+		}
+		
+		return costs;
+	}
+	
+	/*
+	 * capacities drawn uniformly in [low, high]
+	 */
+	private static void fill(int[] layer, Random random, int low, int high)
+	{
+		for( int i = 0; i < layer.length; ++i )
+		{
+			layer[i] = low + random.nextInt(high - low + 1);
+		}
+	}
+	
+	/*
+	 * a pixel is foreground with a likelihood close to 1 inside one of a few disks a quarter to an eighth of the image wide,
+	 * close to 0 outside, with some noise, and every penalty is about 10
+	 */
+	private static void blobs(PixelCosts costs, Random random)
+	{
+		int rows = costs.rows, cols = costs.cols;
+		int count = 3 + random.nextInt(4);
+		double[] x = new double[count], y = new double[count], radius = new double[count];
+		
+		for( int b = 0; b < count; ++b )
+		{
+			x[b] = random.nextDouble() * cols;
+			y[b] = random.nextDouble() * rows;
+			radius[b] = Math.max(1, Math.min(rows, cols) * ( 0.125 + random.nextDouble() * 0.125 ));
+		}
+		
+		for( int r = 0; r < rows; ++r )
+		{
+			for( int c = 0; c < cols; ++c )
+			{
+				double inside = 0;
+				
+				for( int b = 0; b < count; ++b )
+				{
+					double dx = ( c - x[b] ) / radius[b], dy = ( r - y[b] ) / radius[b];
+					
+					// 1 in the middle of the disk, 0.5 on its border
+					inside = Math.max(inside, Math.exp(-Math.log(2) * ( dx * dx + dy * dy )));
+				}
+				
+				likelihood(costs, r * cols + c, inside + random.nextGaussian() * 0.2);
+			}
+		}
+		
+		fill(costs.horizontal, random, 8, 12);
+		fill(costs.vertical, random, 8, 12);
+	}
+	
+	/*
+	 * horizontal, vertical and diagonal segments one or two pixels wide on a noisy background, the penalty of about 10 around them
+	 * is as large as what their pixels gain by being foreground, so the cut has to weigh every one of them
+	 */
+	private static void thin(PixelCosts costs, Random random)
+	{
+		int rows = costs.rows, cols = costs.cols;
+		boolean[] line = new boolean[rows * cols];
+		int count = Math.max(4, ( rows + cols ) / 16);
+		
+		for( int s = 0; s < count; ++s )
+		{
+			int r = random.nextInt(rows), c = random.nextInt(cols);
+			int dr = random.nextInt(3) - 1, dc = random.nextInt(3) - 1;
+			int length = 1 + random.nextInt(Math.max(rows, cols) / 2 + 1);
+			int width = 1 + random.nextInt(2);
+			
+			if( dr == 0 && dc == 0 )
+			{
+				dc = 1;
+			}
+			
+			for( int i = 0; i < length && r >= 0 && r < rows && c >= 0 && c < cols; ++i, r += dr, c += dc )
+			{
+				line[r * cols + c] = true;
+				
+				if( width == 2 )
+				{
+					// the second pixel is beside the segment, below a horizontal one and to the right of the others
+					int r2 = dr == 0 ? r + 1 : r, c2 = dr == 0 ? c : c + 1;
+					
+					if( r2 < rows && c2 < cols )
+					{
+						line[r2 * cols + c2] = true;
+					}
+				}
+			}
+		}
+		
+		for( int p = 0; p < rows * cols; ++p )
+		{
+			likelihood(costs, p, ( line[p] ? 0.9 : 0.1 ) + random.nextGaussian() * 0.2);
+		}
+		
+		fill(costs.horizontal, random, 8, 12);
+		fill(costs.vertical, random, 8, 12);
+	}
+	
+	/*
+	 * terminal edges of a pixel foreground with the given likelihood: a foreground pixel pays its source edge and a background one
+	 * its sink edge, so the likely foreground pixels have a small source and a large sink capacity
+	 */
+	private static void likelihood(PixelCosts costs, int p, double foreground)
+	{
+		double f = Math.max(0, Math.min(1, foreground));
+		
+		costs.source[p] = (int) Math.round(20 * ( 1 - f ));
+		costs.sink[p] = (int) Math.round(20 * f);
+	}
+}
@@ -0,0 +1,167 @@
+package image.segmentation;
+
+import java.util.Arrays;
+
+/*
+ * Dinic's max flow on a residual network
+ * every phase builds the level graph with one bfs from the source and then sends a blocking flow through it,
+ * each node keeps a current arc so no arc is looked at twice within a phase
+ * the depth first search keeps its path in an array, grid paths are too long for recursion
+ */
+public class Dinic implements FlowSolver
+{
+	private ResidualNetwork network;
+	
+	// bfs distance from the source, -1 if not reached or dead end
+	private int[] level;
+	// next arc to look at for each node
+	private int[] current;
+	private int[] queue;
+	// arcs of the path being built
+	private int[] path;
+	
+	private SolverMetrics metrics;
+	
+	public Dinic()
+	{
+		this(SolverMetrics.NONE);
+	}
+	
+	public Dinic(SolverMetrics metrics)
+	{
+		this.metrics = metrics;
+	}
+	
+	@Override
+	public int maxflow(ResidualNetwork network, int source, int sink)
+	{
+		this.network = network;
+		
+		int n = network.nodeCount();
+		int total = 0;
+		
+		this.level = new int[n];
+		this.current = new int[n];
+		this.queue = new int[n];
+		this.path = new int[n];
+		
+		while( this.bfs(source, sink) )
+		{
+			for( int u = 0; u < n; ++u )
+			{
+				this.current[u] = network.firstArc(u);
+			}
+			
+			total += this.blockingFlow(source, sink);
+		}
+		
+		return total;
+	}
+	
+	/*
+	 * levels of the nodes closer to the source than the sink, false if the sink can not be reached
+	 */
+	private boolean bfs(int source, int sink)
+	{
+		ResidualNetwork net = this.network;
+		int head = 0, tail = 0;
+		
+		Arrays.fill(this.level, -1);
+		this.level[source] = 0;
+		this.queue[tail++] = source;
+		
+		while( head < tail )
+		{
+			int cur = this.queue[head++];
+			
+			for( int a = net.firstArc(cur), end = net.endArc(cur); a < end; ++a )
+			{
+				int next = net.head(a);
+				
+				if( this.level[next] == -1 && net.residual(a) > 0 )
+				{
+					this.level[next] = this.level[cur] + 1;
+					
+					// nodes on the sink's level or beyond are never on a shortest path
+					if( next == sink )
+					{
+						this.metrics.search(tail + 1);
+						return true;
+					}
+					
+					this.queue[tail++] = next;
+				}
+			}
+		}
+		
+		this.metrics.search(tail);
+		
+		return false;
+	}
+	
+	private int blockingFlow(int source, int sink)
+	{
+		ResidualNetwork net = this.network;
+		int total = 0;
+		int depth = 0;
+		int u = source;
+		
+		while( true )
+		{
+			if( u == sink )
+			{
+				// find bottleneck along the path
+				int minflow = Integer.MAX_VALUE;
+				for( int i = 0; i < depth; ++i )
+				{
+					minflow = Math.min(minflow, net.residual(this.path[i]));
+				}
+				
+				// go back to the tail of the first arc the push saturates
+				int saturated = -1;
+				for( int i = 0; i < depth; ++i )
+				{
+					net.push(this.path[i], minflow);
+					
+					if( saturated == -1 && net.residual(this.path[i]) == 0 )
+					{
+						saturated = i;
+					}
+				}
+				
+				total += minflow;
+				this.metrics.augmentation(depth);
+				depth = saturated;
+				u = net.head(net.twin(this.path[depth]));
+				continue;
+			}
+			
+			int a = this.current[u], end = net.endArc(u);
+			
+			while( a < end && ( net.residual(a) <= 0 || this.level[net.head(a)] != this.level[u] + 1 ) )
+			{
+				a++;
+			}
+			
+			this.current[u] = a;
+			
+			if( a < end )
+			{
+				this.path[depth++] = a;
+				u = net.head(a);
+				continue;
+			}
+			
+			// dead end, no path of this phase goes through u any more
+			this.level[u] = -1;
+			
+			if( u == source )
+			{
+				return total;
+			}
+			
+			u = net.head(net.twin(this.path[--depth]));
+			this.current[u]++;
+		}
+	}
+}
@@ -1,16 +1,25 @@
 package image.segmentation;
 
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
-import java.util.logging.Logger;
 
+/*
+ * graph of any shape whose edges are kept in a HashSet, with an EdgeIndex beside it
+ * an edge is found from its two nodes and the edges of a node from the node, without going through the whole set
+ */
 public class DirectedGraph extends Graph
 {
+	// the same Edge objects as this.edges, every change of the set goes through insert and delete
+	private EdgeIndex index = new EdgeIndex();
+	
 	public DirectedGraph()
 	{
 		this(0, false);
@@ -31,6 +40,29 @@ public class DirectedGraph extends Graph
 	public DirectedGraph(Graph g)
 	{
 		super(g);
+		
+		for( Edge e : this.edges )
+		{
+			this.index.add(e);
+		}
+	}
+	
+	private void insert(Edge e)
+	{
+		if( this.index.add(e) )
+		{
+			this.edges.add(e);
+		}
+	}
+	
+	private void delete(Integer nodeU, Integer nodeV)
+	{
+		Edge e = this.index.remove(nodeU, nodeV);
+		
+		if( e != null )
+		{
+			this.edges.remove(e);
+		}
 	}
 	
 	@Override
@@ -44,11 +76,16 @@ public class DirectedGraph extends Graph
 	@Override
 	public Graph removeNode(Integer node)
 	{
-		Set<Edge> in = this.incoming(node);
-		Set<Edge> out = this.outgoing(node);
+		for( Edge e : this.incoming(node) )
+		{
+			this.delete(e.source(), e.destination());
+		}
+		
+		for( Edge e : this.outgoing(node) )
+		{
+			this.delete(e.source(), e.destination());
+		}
 		
-		this.edges.removeAll(in);
-		this.edges.removeAll(out);
 		this.nodes.remove(node);
 		
 		return this;
@@ -61,7 +98,7 @@ public class DirectedGraph extends Graph
 		{
 			return this.addEdge(e.source(), e.destination());
 		}
-
+		
 		return this.addEdge(e.source(), e.destination(), e.flow(), e.capacity());
 	}
 	
@@ -80,7 +117,7 @@ public class DirectedGraph extends Graph
 		
 		if( this.nodes.contains(nodeU) && this.nodes.contains(nodeV) )
 		{
-			this.edges.add(new Edge(nodeU, nodeV));
+			this.insert(new Edge(nodeU, nodeV));
 		}
 		else
 		{
@@ -106,7 +143,7 @@ public class DirectedGraph extends Graph
 		
 		if( this.nodes.contains(nodeU) && this.nodes.contains(nodeV) )
 		{
-			this.edges.add(new Edge(nodeU, nodeV, flow, capacity));
+			this.insert(new Edge(nodeU, nodeV, flow, capacity));
 		}
 		else
 		{
@@ -119,9 +156,7 @@ public class DirectedGraph extends Graph
 	@Override
 	public Graph removeEdge(Integer nodeU, Integer nodeV)
 	{
-		Edge e = new Edge(nodeU, nodeV);
-		
-		this.edges.remove(e);
+		this.delete(nodeU, nodeV);
 		
 		return this;
 	}
@@ -151,16 +186,10 @@ public class DirectedGraph extends Graph
 	public Set<Edge> incoming(Integer node)
 	{
 		Set<Edge> ret = new HashSet<Edge>();
-		Iterator<Edge> iter = this.edges.iterator();
 		
-		while( iter.hasNext() )
+		for( Edge e : this.index.incoming(node) )
 		{
-			Edge e = iter.next();
-			
-			if( e.destination().equals(node) )
-			{
-				ret.add(new Edge(e));
-			}
+			ret.add(new Edge(e));
 		}
 		
 		return ret;
@@ -170,16 +199,10 @@ public class DirectedGraph extends Graph
 	public Set<Edge> outgoing(Integer node)
 	{
 		Set<Edge> ret = new HashSet<Edge>();
-		Iterator<Edge> iter = this.edges.iterator();
 		
-		while( iter.hasNext() )
+		for( Edge e : this.index.outgoing(node) )
 		{
-			Edge e = iter.next();
-			
-			if( e.source().equals(node) )
-			{
-				ret.add(new Edge(e));
-			}
+			ret.add(new Edge(e));
 		}
 		
 		return ret;
@@ -236,19 +259,7 @@ public class DirectedGraph extends Graph
 	@Override
 	public Edge getEdge(Integer nodeU, Integer nodeV)
 	{
-		Edge e = new Edge(nodeU, nodeV);
-		Iterator<Edge> iter = this.edges.iterator();
-		
-		while( iter.hasNext() )
-		{
-			Edge cur = iter.next();
-			if( cur.equals(e) )
-			{
-				return cur;
-			}
-		}
-		
-		return null;
+		return this.index.get(nodeU, nodeV);
 	}
 	
 	@Override
@@ -284,69 +295,68 @@ public class DirectedGraph extends Graph
 	@Override
 	public Graph updateNetwork(Set<Edge> path, Integer flow)
 	{
-		// get edges from the graph
-		Set<Edge> orig = this.edges();
-		
-		// intersect with the path
-		orig.retainAll(path);
-		
-		// update the edges in the original graph using the path found
-		Iterator<Edge> iter = orig.iterator();
+		// update the edges of the graph under the arcs of the path found
+		Iterator<Edge> iter = path.iterator();
 		
 		while( iter.hasNext() )
 		{
-			Edge cur = iter.next();
-			Integer augment = cur.flow() + flow;
+			Edge e = iter.next();
+			// cancel the flow of the reverse edge first, the rest goes on the edge itself
+			Edge back = this.index.get(e.destination(), e.source());
+			Integer cancel = back == null ? 0 : Math.min(flow, back.flow());
 			
-			cur.flow(augment);
+			if( cancel > 0 )
+			{
+				back.flow(back.flow() - cancel);
+			}
 			
-			this.setEdge(cur);
+			if( flow > cancel )
+			{
+				Edge cur = this.index.get(e.source(), e.destination());
+				
+				cur.flow(cur.flow() + flow - cancel);
+			}
 		}
 		
 		return this;
 	}
-	 
-	 /*
-	  * create residual graph
-	  */
-	 @Override
-	 public Graph residualGraph()
-	 {
-	 	Iterator<Edge> iter = this.edges.iterator();
-	 	Set<Edge> back_edges = new HashSet<Edge>();
-	 	Set<Edge> to_remove = new HashSet<Edge>();
-	 	Integer forward_flow, backward_flow;
-	 	
-	 	while( iter.hasNext() )
-	 	{
-	 		Edge cur = iter.next();
-	 		Edge backward_edge = new Edge(cur).reverse();
-	 		// backward edge = f(e) > 0
-	 		backward_flow = cur.flow();
-	 		if( backward_flow > 0 )
-	 		{
-		 		// add forward and backward edges
-		 		//this.addEdge(backward_edge);
-	 			backward_edge.flow(backward_flow);
-		 		back_edges.add(backward_edge);
-	 		}
-	 		// forward flow = c(e) - f(e) > 0
-	 		forward_flow = cur.capacity() - cur.flow();
-	 		// if forward flow is zero, remove edge
-	 		if( forward_flow <= 0 )
-	 		{
-	 			//this.removeEdge(cur);
-	 			to_remove.add(cur);
-	 		}
-	 		else
-	 		{
-		 		// modify forward edge in residual graph to contain flow it can send
-		 		cur.flow(forward_flow);
-	 		}
-	 	}
-		
-		this.edges.removeAll(to_remove);
-		this.edges.addAll(back_edges);
+	
+	/*
+	 * create residual graph, every edge holds the capacity left on its arc as its flow
+	 * the arc (u, v) has what is left of the edge (u, v) and the flow of the edge (v, u), which can be sent back,
+	 * the grids have both directions of every n-link, so the two are added up instead of one replacing the other
+	 */
+	@Override
+	public Graph residualGraph()
+	{
+		List<Edge> arcs = new ArrayList<Edge>();
+		
+		for( Edge cur : this.edges )
+		{
+			Edge back = this.index.get(cur.destination(), cur.source());
+			int forward = cur.capacity() - cur.flow() + ( back == null ? 0 : back.flow() );
+			
+			if( forward > 0 )
+			{
+				arcs.add(new Edge(cur.source(), cur.destination(), forward, forward));
+			}
+			
+			// without an edge the other way the flow is the only capacity of the reverse arc
+			if( back == null && cur.flow() > 0 )
+			{
+				arcs.add(new Edge(cur.destination(), cur.source(), cur.flow(), cur.flow()));
+			}
+		}
+		
+		for( Edge e : new ArrayList<Edge>(this.edges) )
+		{
+			this.delete(e.source(), e.destination());
+		}
+		
+		for( Edge e : arcs )
+		{
+			this.insert(e);
+		}
 		
 		return this;
 	}
@@ -381,133 +391,259 @@ public class DirectedGraph extends Graph
 	}
 	
 	@Override
-	public Solution makePath(Map<Integer, Edge> in, Integer nodeU, Integer nodeV)
+	public Graph edmondsKarp(Integer nodeU, Integer nodeV)
 	{
-		Solution path = null;
-		Integer parent = nodeV;
-		
-		path = new Solution();
-		
-		path.edges = new HashSet<Edge>();
-		path.minflow = Integer.MAX_VALUE;
+		return this.edmondsKarp(nodeU, nodeV, false);
+	}
+	
+	/*
+	 * incremental keeps one residual network alive for the whole run and only updates the arcs of each augmenting path,
+	 * otherwise the graph is copied and the residual graph rebuilt after every augmentation
+	 */
+	@Override
+	public Graph edmondsKarp(Integer nodeU, Integer nodeV, Boolean incremental)
+	{
+		Graph h = null;
 		
-		Edge e = null;
-		while( ( e = in.get(parent) ) != null )
+		if( incremental )
+		{
+			h = this.augmentInPlace(nodeU, nodeV);
+		}
+		else
 		{
-			if( e.flow() > 0 && e.flow() < path.minflow )
+			// create residual graph
+			h = new DirectedGraph(this);
+			Graph r = new DirectedGraph(h);
+			
+			r.residualGraph();
+			
+			// run bfs on residual graph and while a path exists
+			// keep augmenting the flow through the path
+			Map<Integer, Edge> bfs = r.BFS_(nodeU, nodeV);
+			
+			Solution path = null;
+			
+			this.metrics.search(bfs.size());
+			
+			while( ( path = this.makePath(bfs, nodeU, nodeV) ) != null )
 			{
-				path.minflow = e.flow();
+				if( path.minflow > 0 )
+				{
+					h.updateNetwork(path.edges, path.minflow);
+					this.metrics.augmentation(path.edges.size());
+				}
+				
+				r = new DirectedGraph(h);
+				r.residualGraph();
+				bfs = r.BFS_(nodeU, nodeV);
+				this.metrics.search(bfs.size());
 			}
-			path.edges.add(e);
-			parent = e.source();
 		}
 		
-		if( path.edges.size() == 0 )
+		// found max flow here, the sum of the flow leaving the source
+		// the augmentations keep the flow conserved, so the sink is not summed as well
+		long sumU = 0;
+		Iterator<Edge> s_edges = h.outgoing(nodeU).iterator();
+		
+		while( s_edges.hasNext() )
 		{
-			return null;
+			Edge e = s_edges.next();
+			
+			sumU += e.flow();
 		}
 		
-		return path;
+		h.maxflow = FlowNetwork.checked(sumU);
+		
+		return h;
 	}
 	
-	@Override
-	public Graph edmondsKarp(Integer nodeU, Integer nodeV)
+	/*
+	 * residual capacities are kept per node, so the bfs only looks at the arcs of the nodes it visits
+	 * and an augmentation touches the arcs of the path and their reverse arcs, nothing else
+	 */
+	private Graph augmentInPlace(Integer nodeU, Integer nodeV)
 	{
-		// create residual graph
-		Graph h = new DirectedGraph(this);
-		Graph r = new DirectedGraph(h);
-		
-		r.residualGraph();
+		DirectedGraph h = new DirectedGraph(this);
 		
-		// run bfs on residual graph and while a path exists
-		// keep augmenting the flow through the path
-		Map<Integer, Edge> bfs = r.BFS_(nodeU, nodeV);
+		// edges of h by source and destination, their flows are updated in place
+		Map<Integer, Map<Integer, Edge>> index = new HashMap<Integer, Map<Integer, Edge>>();
+		// residual capacity of every arc, arcs without capacity left are dropped
+		Map<Integer, Map<Integer, Integer>> residual = new HashMap<Integer, Map<Integer, Integer>>();
 		
-		Solution path = null;
+		Iterator<Integer> nodes = h.nodes.iterator();
 		
-		while( ( path = this.makePath(bfs, nodeU, nodeV) ) != null )
+		while( nodes.hasNext() )
 		{
-			if( path.minflow > 0 )
-			{
-				h.updateNetwork(path.edges, path.minflow);
-			}
+			Integer node = nodes.next();
 			
-			r = new DirectedGraph(h);
-			r.residualGraph();
-			bfs = r.BFS_(nodeU, nodeV);
+			index.put(node, new HashMap<Integer, Edge>());
+			residual.put(node, new HashMap<Integer, Integer>());
 		}
 		
-		// found max flow here
-		// sum of outgoing flow from source = sum of incoming flow in sink
-		Integer sumU = 0, sumV = 0;
-		Iterator<Edge> s_edges = h.outgoing(nodeU).iterator();
-		Iterator<Edge> t_edges = h.incoming(nodeV).iterator();
-		
-		while( s_edges.hasNext() )
-		{
-			Edge e = s_edges.next();
-			
-			sumU += e.flow();
-		}
+		Iterator<Edge> iter = h.edges.iterator();
 		
-		while( t_edges.hasNext() )
+		while( iter.hasNext() )
 		{
-			Edge e = t_edges.next();
+			Edge e = iter.next();
 			
-			sumV += e.flow();
+			index.get(e.source()).put(e.destination(), e);
+			this.addResidual(residual, e.source(), e.destination(), e.capacity() - e.flow());
+			this.addResidual(residual, e.destination(), e.source(), e.flow());
 		}
 		
-		System.out.println("t_edges: " + h.incoming(nodeV) + ", " + h.incoming(nodeV).size());
+		Map<Integer, Integer> parent = new HashMap<Integer, Integer>();
 		
-		if( !sumU.equals(sumV) )
+		while( this.residualPath(residual, nodeU, nodeV, parent) )
 		{
-			Logger logger = Logger.getLogger(this.getClass().getName());
+			Integer minflow = Integer.MAX_VALUE;
+			int length = 0;
 			
-			logger.warning("flow in " + sumU + " not equal to flow out " + sumV);
+			this.metrics.search(parent.size());
+			
+			for( Integer v = nodeV; !v.equals(nodeU); v = parent.get(v) )
+			{
+				minflow = Math.min(minflow, residual.get(parent.get(v)).get(v));
+				length++;
+			}
+			
+			this.metrics.augmentation(length);
+			
+			for( Integer v = nodeV; !v.equals(nodeU); v = parent.get(v) )
+			{
+				Integer u = parent.get(v);
+				
+				this.addResidual(residual, u, v, -minflow);
+				this.addResidual(residual, v, u, minflow);
+				
+				// cancel flow on the reverse edge first, the rest goes on the edge itself
+				Edge back = index.get(v).get(u);
+				Integer cancel = 0;
+				
+				if( back != null )
+				{
+					cancel = Math.min(minflow, back.flow());
+					back.flow(back.flow() - cancel);
+				}
+				
+				if( minflow > cancel )
+				{
+					Edge e = index.get(u).get(v);
+					e.flow(e.flow() + minflow - cancel);
+				}
+			}
 		}
 		
-		h.maxflow = sumU;
+		this.metrics.search(parent.size());
 		
 		return h;
 	}
 	
-	@Override
-	public Solution minimumCut(Integer nodeU)
+	private void addResidual(Map<Integer, Map<Integer, Integer>> residual, Integer nodeU, Integer nodeV, Integer delta)
 	{
-		Graph residual = new DirectedGraph(this);
-		
-		residual.residualGraph();
-		Solution mincut = new Solution();
+		Map<Integer, Integer> out = residual.get(nodeU);
+		Integer cur = out.get(nodeV);
+		Integer updated = ( cur == null ? 0 : cur ) + delta;
 		
-		mincut.background = new HashSet<Integer>();
-		mincut.foreground = this.nodes();
-		
-		Map<Integer, Boolean> visited = new HashMap<Integer, Boolean>();
+		if( updated > 0 )
+		{
+			out.put(nodeV, updated);
+		}
+		else
+		{
+			out.remove(nodeV);
+		}
+	}
+	
+	/*
+	 * bfs over the arcs with capacity left, fills parent with the node each node was reached from
+	 */
+	private boolean residualPath(Map<Integer, Map<Integer, Integer>> residual, Integer nodeU, Integer nodeV, Map<Integer, Integer> parent)
+	{
 		Queue<Integer> queue = new LinkedList<Integer>();
 		
+		parent.clear();
+		parent.put(nodeU, nodeU);
 		queue.add(nodeU);
-		visited.putIfAbsent(nodeU, true);
 		
 		while( !queue.isEmpty() )
 		{
 			Integer cur = queue.poll();
-			Set<Edge> neighbors = residual.outgoing(cur);
-			Iterator<Edge> iter = neighbors.iterator();
+			Iterator<Integer> iter = residual.get(cur).keySet().iterator();
 			
 			while( iter.hasNext() )
 			{
-				Edge e = iter.next();
-				// if not null
-				if( visited.get(e.destination()) == null || visited.get(e.destination()) == false )
+				Integer next = iter.next();
+				
+				if( !parent.containsKey(next) )
 				{
-					visited.putIfAbsent(e.destination(), true);
-					queue.add(e.destination());
+					parent.put(next, cur);
+					
+					if( next.equals(nodeV) )
+					{
+						return true;
+					}
+					
+					queue.add(next);
 				}
 			}
 		}
 		
-		mincut.background.addAll(visited.keySet());
-		mincut.foreground.removeAll(visited.keySet());
+		return false;
+	}
+	
+	/*
+	 * solved on a csr copy of the graph, the returned graph holds the flow
+	 */
+	@Override
+	public Graph dinic(Integer nodeU, Integer nodeV)
+	{
+		return new CSRGraph(this).dinic(nodeU, nodeV);
+	}
+	
+	@Override
+	public Graph boykovKolmogorov(Integer nodeU, Integer nodeV)
+	{
+		return new CSRGraph(this).boykovKolmogorov(nodeU, nodeV);
+	}
+	
+	@Override
+	public Graph pushRelabel(Integer nodeU, Integer nodeV)
+	{
+		return new CSRGraph(this).pushRelabel(nodeU, nodeV);
+	}
+	
+	@Override
+	public Graph parallelPushRelabel(Integer nodeU, Integer nodeV, Integer threads)
+	{
+		return new CSRGraph(this).parallelPushRelabel(nodeU, nodeV, threads);
+	}
+	
+	/*
+	 * searched in a csr copy, whose residual arcs are the edges of residualGraph()
+	 */
+	@Override
+	public BitSet sourceSide(Integer nodeU)
+	{
+		return new CSRGraph(this).sourceSide(nodeU);
+	}
+	
+	@Override
+	public Solution minimumCut(Integer nodeU)
+	{
+		BitSet background = this.sourceSide(nodeU);
+		BitSet foreground = new BitSet();
+		Solution mincut = new Solution();
+		
+		for( Integer node : this.nodes )
+		{
+			if( !background.get(node) )
+			{
+				foreground.set(node);
+			}
+		}
+		
+		mincut.background = new NodeSet(background);
+		mincut.foreground = new NodeSet(foreground);
 		
 		return mincut;
 	}
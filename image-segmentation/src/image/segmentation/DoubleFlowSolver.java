@@ -0,0 +1,10 @@
+package image.segmentation;
+
+/*
+ * max flow algorithm working in place on a residual network with double capacities
+ * returns the amount of flow it pushed from source to sink
+ */
+public interface DoubleFlowSolver
+{
+	public double maxflow(DoubleResidualNetwork network, int source, int sink);
+}
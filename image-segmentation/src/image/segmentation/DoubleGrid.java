@@ -0,0 +1,140 @@
+package image.segmentation;
+
+import java.util.BitSet;
+
+/*
+ * 4-connected pixel grid with double capacities, for real-valued energies such as negative log likelihoods
+ * the arcs are numbered like the ones of a GridGraph, which computes them, only the residuals are kept here
+ * node 0 is the source, nodes 1 .. rows * cols the pixels in row-major order and the last node the sink
+ */
+public class DoubleGrid implements DoubleResidualNetwork
+{
+	private GridGraph arcs;
+	private int rows, cols;
+	
+	private double[] residuals;
+	
+	public DoubleGrid(int rows, int cols)
+	{
+		this.arcs = new GridGraph(rows, cols, false);
+		this.rows = rows;
+		this.cols = cols;
+		this.residuals = new double[8 * rows * cols];
+	}
+	
+	public DoubleGrid(PixelCosts costs)
+	{
+		this(costs.rows, costs.cols);
+		
+		int[][] layers = new int[][] { costs.source, costs.sink, costs.horizontal, costs.vertical };
+		
+		for( int a = 0; a < this.residuals.length; ++a )
+		{
+			int l = this.arcs.layer(a);
+			
+			this.residuals[a] = l == -1 ? 0 : layers[l][this.arcs.layerIndex(a)];
+		}
+	}
+	
+	/*
+	 * set every capacity from cost layers laid out like the ones of PixelCosts, all flows are reset
+	 */
+	public DoubleGrid load(double[] source, double[] sink, double[] horizontal, double[] vertical)
+	{
+		double[][] layers = new double[][] { source, sink, horizontal, vertical };
+		
+		for( int a = 0; a < this.residuals.length; ++a )
+		{
+			int l = this.arcs.layer(a);
+			
+			this.residuals[a] = l == -1 ? 0 : layers[l][this.arcs.layerIndex(a)];
+		}
+		
+		return this;
+	}
+	
+	public int rows()
+	{
+		return this.rows;
+	}
+	
+	public int cols()
+	{
+		return this.cols;
+	}
+	
+	/*
+	 * nodes reachable from the source over arcs with more than epsilon left, graph node i (network node i - 1) is bit i
+	 * the epsilon should be the one the solver used
+	 */
+	public BitSet sourceSide(double epsilon)
+	{
+		BitSet visited = new BitSet(this.nodeCount() + 1);
+		int[] queue = new int[this.nodeCount()];
+		int head = 0, tail = 0;
+		
+		queue[tail++] = 0;
+		visited.set(1);
+		
+		while( head < tail )
+		{
+			int cur = queue[head++];
+			
+			for( int a = this.firstArc(cur), end = this.endArc(cur); a < end; ++a )
+			{
+				int next = this.head(a);
+				
+				if( this.residuals[a] > epsilon && !visited.get(next + 1) )
+				{
+					visited.set(next + 1);
+					queue[tail++] = next;
+				}
+			}
+		}
+		
+		return visited;
+	}
+	
+	@Override
+	public int nodeCount()
+	{
+		return this.arcs.nodeCount();
+	}
+	
+	@Override
+	public int firstArc(int u)
+	{
+		return this.arcs.firstArc(u);
+	}
+	
+	@Override
+	public int endArc(int u)
+	{
+		return this.arcs.endArc(u);
+	}
+	
+	@Override
+	public int head(int arc)
+	{
+		return this.arcs.head(arc);
+	}
+	
+	@Override
+	public int twin(int arc)
+	{
+		return this.arcs.twin(arc);
+	}
+	
+	@Override
+	public double residual(int arc)
+	{
+		return this.residuals[arc];
+	}
+	
+	@Override
+	public void push(int arc, double flow)
+	{
+		this.residuals[arc] -= flow;
+		this.residuals[this.arcs.twin(arc)] += flow;
+	}
+}
@@ -0,0 +1,12 @@
+package image.segmentation;
+
+/*
+ * residual network with real capacities, e.g. energies computed from the likelihoods of an image
+ * rounding leaves tiny residuals behind, the solvers treat anything below their epsilon as saturated
+ */
+public interface DoubleResidualNetwork extends ArcNetwork
+{
+	public double residual(int arc);
+	
+	public void push(int arc, double flow);
+}
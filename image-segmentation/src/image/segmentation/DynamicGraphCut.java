@@ -0,0 +1,281 @@
+package image.segmentation;
+
+/*
+ * minimum cut kept up to date while capacities change (dynamic graph cuts, Kohli and Torr)
+ * the flow of the last solve is kept and repaired instead of thrown away:
+ * - a capacity that is raised, or lowered but still above its flow, only changes the residual capacity
+ * - an edge whose flow is above its new capacity gives the extra flow back, the tail is left with an excess
+ *   and the head with a deficit, both are removed by raising the capacity of the node's two terminal edges
+ *   by the same amount and pushing it through one of them, which adds that amount to every cut
+ * the sum of those amounts is subtracted from the max flow, the cut itself does not move
+ * the search trees of the Boykov-Kolmogorov solver are kept as well, so solving again only looks at
+ * the nodes around the changed edges and the subtrees hanging from them
+ */
+public class DynamicGraphCut
+{
+	private FlowNetwork network;
+	private BoykovKolmogorov solver;
+	private int source, sink;
+	
+	// net flow leaving the source
+	private int outflow;
+	// added to every cut by the repairs
+	private int offset;
+	// added to both terminal edges of each node by the repairs
+	private int[] shift;
+	
+	/*
+	 * solve a copy of g, the copy is updated by the calls to setCapacity and solve
+	 */
+	public DynamicGraphCut(FlowNetwork g, Integer nodeU, Integer nodeV)
+	{
+		if( !g.contains(nodeU) || !g.contains(nodeV) )
+		{
+			throw new IndexOutOfBoundsException("The nodes must be present in the graph");
+		}
+		
+		this.network = g.copy().compile();
+		this.source = nodeU - 1;
+		this.sink = nodeV - 1;
+		this.solver = new BoykovKolmogorov(g.metrics);
+		this.solver.maxflow(this.network, this.source, this.sink);
+		this.outflow = this.network.outflow(this.source);
+		this.offset = 0;
+		this.shift = new int[this.network.nodeCount()];
+		this.network.maxflow = this.outflow;
+	}
+	
+	/*
+	 * change the capacity of edge (nodeU, nodeV), the flow is repaired right away,
+	 * the max flow and the cut are only brought up to date by solve
+	 * the edge must exist, the arcs of the solved graph can not be rebuilt
+	 */
+	public DynamicGraphCut setCapacity(Integer nodeU, Integer nodeV, Integer capacity)
+	{
+		if( capacity < 0 )
+		{
+			throw new IllegalArgumentException("capacity can not be negative");
+		}
+		
+		int a = this.edgeArc(nodeU, nodeV);
+		
+		if( a == -1 )
+		{
+			throw new IllegalArgumentException("(" + nodeU + ", " + nodeV + ") is not an edge of the graph");
+		}
+		
+		FlowNetwork net = this.network;
+		int u = nodeU - 1, v = nodeV - 1;
+		
+		// the terminal edges carry the repairs on top of the capacity they were given
+		if( u == this.source && v != this.sink )
+		{
+			capacity += this.shift[v];
+		}
+		else if( v == this.sink && u != this.source )
+		{
+			capacity += this.shift[u];
+		}
+		
+		int flow = net.capacity(a) - net.residual(a);
+		int over = flow - capacity;
+		
+		if( over <= 0 )
+		{
+			net.store(a, capacity, capacity - flow);
+			this.solver.changed(a);
+			
+			return this;
+		}
+		
+		boolean tail = u != this.source && u != this.sink, head = v != this.source && v != this.sink;
+		
+		// look the terminal arcs up first, nothing is changed if one is missing
+		int[] tailArcs = tail ? this.terminalArcs(u) : null;
+		int[] headArcs = head ? this.terminalArcs(v) : null;
+		
+		// give back what the edge can no longer carry
+		int t = net.twin(a);
+		
+		net.store(a, capacity, 0);
+		net.store(t, net.capacity(t), net.residual(t) - over);
+		this.solver.changed(a);
+		
+		if( u == this.source )
+		{
+			this.outflow -= over;
+		}
+		
+		if( tail )
+		{
+			this.excess(u, tailArcs, over);
+		}
+		
+		if( head )
+		{
+			this.deficit(v, headArcs, over);
+		}
+		
+		return this;
+	}
+	
+	/*
+	 * add delta (possibly negative) to the capacity of edge (nodeU, nodeV)
+	 */
+	public DynamicGraphCut addCapacity(Integer nodeU, Integer nodeV, Integer delta)
+	{
+		int a = this.edgeArc(nodeU, nodeV);
+		
+		if( a == -1 )
+		{
+			throw new IllegalArgumentException("(" + nodeU + ", " + nodeV + ") is not an edge of the graph");
+		}
+		
+		return this.setCapacity(nodeU, nodeV, this.capacity(nodeU, nodeV, a) + delta);
+	}
+	
+	/*
+	 * capacity of edge (nodeU, nodeV), without the repairs
+	 */
+	public Integer capacity(Integer nodeU, Integer nodeV)
+	{
+		int a = this.edgeArc(nodeU, nodeV);
+		
+		return a == -1 ? null : this.capacity(nodeU, nodeV, a);
+	}
+	
+	private int capacity(Integer nodeU, Integer nodeV, int a)
+	{
+		int u = nodeU - 1, v = nodeV - 1;
+		int c = this.network.capacity(a);
+		
+		if( u == this.source && v != this.sink )
+		{
+			return c - this.shift[v];
+		}
+		
+		if( v == this.sink && u != this.source )
+		{
+			return c - this.shift[u];
+		}
+		
+		return c;
+	}
+	
+	/*
+	 * u keeps amount more than it sends, send it to the sink through a larger sink edge
+	 */
+	private void excess(int u, int[] arcs, int amount)
+	{
+		FlowNetwork net = this.network;
+		int up = arcs[0], down = arcs[1];
+		
+		net.store(down, net.capacity(down) + amount, net.residual(down));
+		net.store(net.twin(down), net.capacity(net.twin(down)), net.residual(net.twin(down)) + amount);
+		net.store(up, net.capacity(up) + amount, net.residual(up) + amount);
+		this.solver.changed(down);
+		this.solver.changed(up);
+		this.shift[u] += amount;
+		this.offset += amount;
+	}
+	
+	/*
+	 * v sends amount more than it gets, get it from the source through a larger source edge
+	 */
+	private void deficit(int v, int[] arcs, int amount)
+	{
+		FlowNetwork net = this.network;
+		int up = arcs[0], down = arcs[1];
+		
+		net.store(up, net.capacity(up) + amount, net.residual(up));
+		net.store(net.twin(up), net.capacity(net.twin(up)), net.residual(net.twin(up)) + amount);
+		net.store(down, net.capacity(down) + amount, net.residual(down) + amount);
+		this.solver.changed(up);
+		this.solver.changed(down);
+		this.outflow += amount;
+		this.shift[v] += amount;
+		this.offset += amount;
+	}
+	
+	/*
+	 * arcs of edges (source, u) and (u, sink)
+	 */
+	private int[] terminalArcs(int u)
+	{
+		return new int[] { this.terminalArc(u, this.source), this.terminalArc(u, this.sink) };
+	}
+	
+	/*
+	 * arc of edge (source, u) or (u, sink), found from u since the terminals have an arc to every node
+	 */
+	private int terminalArc(int u, int terminal)
+	{
+		FlowNetwork net = this.network;
+		
+		for( int a = net.firstArc(u), end = net.endArc(u); a < end; ++a )
+		{
+			if( net.head(a) != terminal )
+			{
+				continue;
+			}
+			
+			if( terminal == this.sink && net.isEdge(a) )
+			{
+				return a;
+			}
+			
+			if( terminal == this.source && net.isEdge(net.twin(a)) )
+			{
+				return net.twin(a);
+			}
+		}
+		
+		throw new IllegalArgumentException("node " + ( u + 1 ) + " has no edge " + ( terminal == this.sink ? "to the sink" : "from the source" ) + ", its flow can not be repaired");
+	}
+	
+	/*
+	 * arc carrying edge (nodeU, nodeV), -1 if absent
+	 */
+	private int edgeArc(Integer nodeU, Integer nodeV)
+	{
+		if( !this.network.contains(nodeU) || !this.network.contains(nodeV) )
+		{
+			throw new IndexOutOfBoundsException("The nodes must be present in the graph");
+		}
+		
+		int u = nodeU - 1, v = nodeV - 1;
+		
+		if( u == this.source && v != this.sink )
+		{
+			return this.terminalArc(v, this.source);
+		}
+		
+		return this.network.arc(nodeU, nodeV);
+	}
+	
+	/*
+	 * bring the max flow back up to date after the changes, returns the solved graph
+	 */
+	public FlowNetwork solve()
+	{
+		this.outflow += this.solver.resolve();
+		this.network.maxflow = this.outflow - this.offset;
+		
+		return this.network;
+	}
+	
+	public Integer maxflow()
+	{
+		return this.network.maxflow;
+	}
+	
+	public Solution minimumCut()
+	{
+		return this.network.minimumCut(this.source + 1);
+	}
+	
+	public FlowNetwork graph()
+	{
+		return this.network;
+	}
+}
@@ -121,14 +121,11 @@ public class Edge
 	
 	/*
 	 * useful so as to not add the same edge twice even if the edge has different weights
+	 * (u, v) and (v, u) hash differently, the grids have both directions of every n-link
 	 */
 	@Override
 	public int hashCode()
 	{
-		int result = 0;
-		
-		result = this.source.hashCode() * this.destination.hashCode();
-		
-		return result;
+		return 31 * this.source.hashCode() + this.destination.hashCode();
 	}
 }
@@ -0,0 +1,220 @@
+package image.segmentation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * edges of a DirectedGraph by (source, destination), for graphs of any shape
+ * the two nodes are packed into one long key of an open-addressing table with linear probing, so a lookup hashes no Edge
+ * and makes no Integer, removals shift the following entries back instead of leaving tombstones
+ * the edges leaving and entering every node are kept as well, so incoming and outgoing cost the degree of the node
+ */
+class EdgeIndex
+{
+	private static final int MIN_CAPACITY = 16;
+	
+	private long[] keys;
+	// null for an empty slot
+	private Edge[] values;
+	private int size;
+	
+	private Map<Integer, List<Edge>> out = new HashMap<Integer, List<Edge>>();
+	private Map<Integer, List<Edge>> in = new HashMap<Integer, List<Edge>>();
+	
+	EdgeIndex()
+	{
+		this.keys = new long[MIN_CAPACITY];
+		this.values = new Edge[MIN_CAPACITY];
+	}
+	
+	private static long key(int u, int v)
+	{
+		return (long) u << 32 | ( v & 0xffffffffL );
+	}
+	
+	/*
+	 * slot of a key in a table of the given length, a power of two
+	 */
+	private static int slot(long key, int length)
+	{
+		long h = key * 0x9E3779B97F4A7C15L;
+		
+		return (int) ( h >>> 32 ^ h ) & ( length - 1 );
+	}
+	
+	/*
+	 * slot holding (u, v), or the empty slot where it would go
+	 */
+	private int find(int u, int v)
+	{
+		long k = key(u, v);
+		int mask = this.keys.length - 1;
+		int i = slot(k, this.keys.length);
+		
+		while( this.values[i] != null && this.keys[i] != k )
+		{
+			i = ( i + 1 ) & mask;
+		}
+		
+		return i;
+	}
+	
+	Edge get(int u, int v)
+	{
+		return this.values[this.find(u, v)];
+	}
+	
+	/*
+	 * false if an edge with the same ends is already indexed, it is then left as it is
+	 */
+	boolean add(Edge e)
+	{
+		int u = e.source(), v = e.destination();
+		int i = this.find(u, v);
+		
+		if( this.values[i] != null )
+		{
+			return false;
+		}
+		
+		this.keys[i] = key(u, v);
+		this.values[i] = e;
+		this.size++;
+		adjacency(this.out, u).add(e);
+		adjacency(this.in, v).add(e);
+		
+		// at most half full, the probes stay short
+		if( 2 * this.size > this.keys.length )
+		{
+			this.resize(2 * this.keys.length);
+		}
+		
+		return true;
+	}
+	
+	/*
+	 * the edge removed, null if there was none
+	 */
+	Edge remove(int u, int v)
+	{
+		int i = this.find(u, v);
+		Edge e = this.values[i];
+		
+		if( e == null )
+		{
+			return null;
+		}
+		
+		int mask = this.keys.length - 1;
+		
+		// move back the entries of the probe run that would no longer be found past the hole
+		for( int j = ( i + 1 ) & mask; this.values[j] != null; j = ( j + 1 ) & mask )
+		{
+			int home = slot(this.keys[j], this.keys.length);
+			
+			if( ( ( j - home ) & mask ) >= ( ( j - i ) & mask ) )
+			{
+				this.keys[i] = this.keys[j];
+				this.values[i] = this.values[j];
+				i = j;
+			}
+		}
+		
+		this.values[i] = null;
+		this.size--;
+		unlink(this.out, u, e);
+		unlink(this.in, v, e);
+		
+		return e;
+	}
+	
+	/*
+	 * edges leaving the node, a read-only view
+	 */
+	List<Edge> outgoing(Integer node)
+	{
+		List<Edge> edges = this.out.get(node);
+		
+		return edges == null ? Collections.<Edge>emptyList() : Collections.unmodifiableList(edges);
+	}
+	
+	/*
+	 * edges entering the node, a read-only view
+	 */
+	List<Edge> incoming(Integer node)
+	{
+		List<Edge> edges = this.in.get(node);
+		
+		return edges == null ? Collections.<Edge>emptyList() : Collections.unmodifiableList(edges);
+	}
+	
+	int size()
+	{
+		return this.size;
+	}
+	
+	private void resize(int capacity)
+	{
+		long[] keys = this.keys;
+		Edge[] values = this.values;
+		
+		this.keys = new long[capacity];
+		this.values = new Edge[capacity];
+		
+		for( int i = 0; i < keys.length; ++i )
+		{
+			if( values[i] != null )
+			{
+				int j = slot(keys[i], capacity);
+				
+				while( this.values[j] != null )
+				{
+					j = ( j + 1 ) & ( capacity - 1 );
+				}
+				
+				this.keys[j] = keys[i];
+				this.values[j] = values[i];
+			}
+		}
+	}
+	
+	private static List<Edge> adjacency(Map<Integer, List<Edge>> lists, Integer node)
+	{
+		List<Edge> edges = lists.get(node);
+		
+		if( edges == null )
+		{
+			edges = new ArrayList<Edge>(4);
+			lists.put(node, edges);
+		}
+		
+		return edges;
+	}
+	
+	/*
+	 * the list is searched for the edge itself, an equal edge with other capacities is another object
+	 */
+	private static void unlink(Map<Integer, List<Edge>> lists, Integer node, Edge e)
+	{
+		List<Edge> edges = lists.get(node);
+		
+		for( int i = 0; i < edges.size(); ++i )
+		{
+			if( edges.get(i) == e )
+			{
+				// order does not matter, the last edge fills the hole
+				edges.set(i, edges.get(edges.size() - 1));
+				edges.remove(edges.size() - 1);
+				break;
+			}
+		}
+		
+		if( edges.isEmpty() )
+		{
+			lists.remove(node);
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package image.segmentation;
+
+import java.util.Arrays;
+
+/*
+ * shortest augmenting paths on a residual network
+ * each bfs only looks at the arcs of the nodes it visits, so one augmentation is O(V + E)
+ */
+public class EdmondsKarp implements FlowSolver
+{
+	private SolverMetrics metrics;
+	
+	public EdmondsKarp()
+	{
+		this(SolverMetrics.NONE);
+	}
+	
+	public EdmondsKarp(SolverMetrics metrics)
+	{
+		this.metrics = metrics;
+	}
+	
+	@Override
+	public int maxflow(ResidualNetwork network, int source, int sink)
+	{
+		int n = network.nodeCount();
+		// arc used to reach each node in the last bfs, -1 if not reached
+		int[] parent = new int[n];
+		int[] queue = new int[n];
+		int total = 0;
+		
+		while( this.bfs(network, source, sink, parent, queue) )
+		{
+			// find bottleneck along the path
+			int minflow = Integer.MAX_VALUE;
+			int length = 0;
+			for( int v = sink; v != source; v = network.head(network.twin(parent[v])) )
+			{
+				minflow = Math.min(minflow, network.residual(parent[v]));
+				length++;
+			}
+			
+			for( int v = sink; v != source; v = network.head(network.twin(parent[v])) )
+			{
+				network.push(parent[v], minflow);
+			}
+			
+			total += minflow;
+			this.metrics.augmentation(length);
+		}
+		
+		return total;
+	}
+	
+	private boolean bfs(ResidualNetwork network, int source, int sink, int[] parent, int[] queue)
+	{
+		Arrays.fill(parent, -1);
+		
+		int head = 0, tail = 0;
+		queue[tail++] = source;
+		// any value other than -1 marks the source as visited, the path walk stops before using it
+		parent[source] = network.firstArc(source);
+		
+		while( head < tail )
+		{
+			int cur = queue[head++];
+			
+			for( int a = network.firstArc(cur), end = network.endArc(cur); a < end; ++a )
+			{
+				int next = network.head(a);
+				
+				if( parent[next] == -1 && network.residual(a) > 0 )
+				{
+					parent[next] = a;
+					
+					if( next == sink )
+					{
+						this.metrics.search(tail + 1);
+						return true;
+					}
+					
+					queue[tail++] = next;
+				}
+			}
+		}
+		
+		this.metrics.search(tail);
+		
+		return false;
+	}
+}
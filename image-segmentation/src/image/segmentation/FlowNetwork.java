@@ -0,0 +1,523 @@
+package image.segmentation;
+
+import java.util.AbstractSet;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/*
+ * graph whose edges live in a residual network
+ * the solvers run directly on the arcs, the Graph view (edges, incoming, outgoing, minimum cut) is built on top of them
+ * graph node `i` is node `i - 1` of the residual network
+ */
+public abstract class FlowNetwork extends Graph implements ResidualNetwork
+{
+	public FlowNetwork()
+	{
+		super();
+		this.directed = true;
+		this.weighted = true;
+	}
+	
+	/*
+	 * true if the arc carries a graph edge, false for arcs that only exist as the reverse of one
+	 */
+	protected abstract boolean isEdge(int arc);
+	
+	/*
+	 * capacity of the edge carried by the arc, 0 for reverse arcs
+	 */
+	protected abstract int capacity(int arc);
+	
+	/*
+	 * set the capacity and the residual capacity of an arc, the capacity is ignored for reverse arcs
+	 */
+	protected abstract void store(int arc, int capacity, int residual);
+	
+	/*
+	 * independent copy holding the same capacities and flows
+	 */
+	protected abstract FlowNetwork copy();
+	
+	/*
+	 * make the arcs available, called before they are accessed through the ResidualNetwork methods
+	 */
+	public FlowNetwork compile()
+	{
+		return this;
+	}
+	
+	protected boolean contains(Integer node)
+	{
+		return node >= 1 && node <= this.nodeCount();
+	}
+	
+	/*
+	 * the edge carried by the arc, flow is whatever the arc has used up of its capacity
+	 */
+	protected Edge edge(int arc)
+	{
+		int flow = Math.max(0, this.capacity(arc) - this.residual(arc));
+		
+		return new Edge(this.head(this.twin(arc)) + 1, this.head(arc) + 1, flow, this.capacity(arc));
+	}
+	
+	/*
+	 * arc carrying edge (nodeU, nodeV), -1 if absent
+	 */
+	protected int arc(Integer nodeU, Integer nodeV)
+	{
+		if( !this.contains(nodeU) || !this.contains(nodeV) )
+		{
+			return -1;
+		}
+		
+		this.compile();
+		
+		int u = nodeU - 1, v = nodeV - 1;
+		
+		for( int a = this.firstArc(u), end = this.endArc(u); a < end; ++a )
+		{
+			if( this.head(a) == v && this.isEdge(a) )
+			{
+				return a;
+			}
+		}
+		
+		return -1;
+	}
+	
+	/*
+	 * the nodes are always 1 .. nodeCount(), so a read-only range is returned instead of a copy
+	 */
+	@Override
+	public Set<Integer> nodes()
+	{
+		final int n = this.nodeCount();
+		
+		return new AbstractSet<Integer>()
+		{
+			@Override
+			public boolean contains(Object o)
+			{
+				return o instanceof Integer && (Integer) o >= 1 && (Integer) o <= n;
+			}
+			
+			@Override
+			public Iterator<Integer> iterator()
+			{
+				return new Iterator<Integer>()
+				{
+					private int next = 1;
+					
+					@Override
+					public boolean hasNext()
+					{
+						return this.next <= n;
+					}
+					
+					@Override
+					public Integer next()
+					{
+						if( this.next > n )
+						{
+							throw new NoSuchElementException();
+						}
+						
+						return this.next++;
+					}
+					
+					@Override
+					public void remove()
+					{
+						throw new UnsupportedOperationException("the nodes of a flow network can not be removed through nodes()");
+					}
+				};
+			}
+			
+			@Override
+			public int size()
+			{
+				return n;
+			}
+		};
+	}
+	
+	/*
+	 * edges counted on the arcs, edges() would box one Edge per arc
+	 */
+	@Override
+	public int edgeCount()
+	{
+		int count = 0;
+		
+		this.compile();
+		
+		for( int u = 0; u < this.nodeCount(); ++u )
+		{
+			for( int a = this.firstArc(u), end = this.endArc(u); a < end; ++a )
+			{
+				if( this.isEdge(a) )
+				{
+					count++;
+				}
+			}
+		}
+		
+		return count;
+	}
+	
+	@Override
+	public Set<Edge> edges()
+	{
+		Set<Edge> copy = new HashSet<Edge>();
+		
+		this.compile();
+		
+		for( int u = 0; u < this.nodeCount(); ++u )
+		{
+			for( int a = this.firstArc(u), end = this.endArc(u); a < end; ++a )
+			{
+				if( this.isEdge(a) )
+				{
+					copy.add(this.edge(a));
+				}
+			}
+		}
+		
+		return copy;
+	}
+	
+	@Override
+	public Set<Edge> incoming(Integer node)
+	{
+		Set<Edge> ret = new HashSet<Edge>();
+		
+		if( !this.contains(node) )
+		{
+			return ret;
+		}
+		
+		this.compile();
+		
+		int v = node - 1;
+		
+		for( int a = this.firstArc(v), end = this.endArc(v); a < end; ++a )
+		{
+			// the twin of an arc leaving v enters v
+			if( this.isEdge(this.twin(a)) )
+			{
+				ret.add(this.edge(this.twin(a)));
+			}
+		}
+		
+		return ret;
+	}
+	
+	@Override
+	public Set<Edge> outgoing(Integer node)
+	{
+		Set<Edge> ret = new HashSet<Edge>();
+		
+		if( !this.contains(node) )
+		{
+			return ret;
+		}
+		
+		this.compile();
+		
+		int u = node - 1;
+		
+		for( int a = this.firstArc(u), end = this.endArc(u); a < end; ++a )
+		{
+			if( this.isEdge(a) )
+			{
+				ret.add(this.edge(a));
+			}
+		}
+		
+		return ret;
+	}
+	
+	@Override
+	public Edge getEdge(Edge e)
+	{
+		return this.getEdge(e.source(), e.destination());
+	}
+	
+	@Override
+	public Edge getEdge(Integer nodeU, Integer nodeV)
+	{
+		int a = this.arc(nodeU, nodeV);
+		
+		return a == -1 ? null : this.edge(a);
+	}
+	
+	@Override
+	public Graph addEdge(Edge e)
+	{
+		return this.addEdge(e.source(), e.destination(), e.flow() == null ? 0 : e.flow(), e.capacity() == null ? 0 : e.capacity());
+	}
+	
+	@Override
+	public Graph addEdge(Integer nodeU, Integer nodeV)
+	{
+		return this.addEdge(nodeU, nodeV, 0);
+	}
+	
+	@Override
+	public Graph addEdge(Integer nodeU, Integer nodeV, Integer capacity)
+	{
+		return this.addEdge(nodeU, nodeV, 0, capacity);
+	}
+	
+	@Override
+	public Graph setEdge(Integer nodeU, Integer nodeV, Integer capacity)
+	{
+		return this.setEdge(nodeU, nodeV, 0, capacity);
+	}
+	
+	@Override
+	public Graph setEdge(Edge e)
+	{
+		return this.setEdge(e.source(), e.destination(), e.flow(), e.capacity());
+	}
+	
+	@Override
+	public Graph removeEdge(Edge e)
+	{
+		return this.removeEdge(e.source(), e.destination());
+	}
+	
+	/*
+	 * bfs over the arcs with residual capacity left
+	 * the edges in the returned map hold the residual capacity as their flow, like the edges of residualGraph()
+	 */
+	@Override
+	public Map<Integer, Edge> BFS_(Integer nodeU, Integer nodeV)
+	{
+		Map<Integer, Edge> path = new HashMap<Integer, Edge>();
+		
+		if( !this.contains(nodeU) )
+		{
+			return path;
+		}
+		
+		this.compile();
+		
+		boolean[] visited = new boolean[this.nodeCount()];
+		int[] queue = new int[this.nodeCount()];
+		int head = 0, tail = 0;
+		
+		queue[tail++] = nodeU - 1;
+		visited[nodeU - 1] = true;
+		path.put(nodeU, null);
+		
+		while( head < tail )
+		{
+			int cur = queue[head++];
+			
+			for( int a = this.firstArc(cur), end = this.endArc(cur); a < end; ++a )
+			{
+				int next = this.head(a);
+				
+				if( !visited[next] && this.residual(a) > 0 )
+				{
+					visited[next] = true;
+					path.put(next + 1, new Edge(cur + 1, next + 1, this.residual(a), this.residual(a)));
+					queue[tail++] = next;
+				}
+			}
+		}
+		
+		return path;
+	}
+	
+	@Override
+	public Iterator<Integer> nodeIterator()
+	{
+		return this.nodes().iterator();
+	}
+	
+	@Override
+	public Iterator<Edge> edgeIterator()
+	{
+		return this.edges().iterator();
+	}
+	
+	/*
+	 * the path is made of residual arcs, push the flow along an arc of each one
+	 */
+	@Override
+	public Graph updateNetwork(Set<Edge> path, Integer flow)
+	{
+		this.compile();
+		
+		Iterator<Edge> iter = path.iterator();
+		
+		while( iter.hasNext() )
+		{
+			Edge cur = iter.next();
+			int u = cur.source() - 1, v = cur.destination() - 1;
+			
+			for( int a = this.firstArc(u), end = this.endArc(u); a < end; ++a )
+			{
+				if( this.head(a) == v && this.residual(a) >= flow )
+				{
+					this.push(a, flow);
+					break;
+				}
+			}
+		}
+		
+		return this;
+	}
+	
+	/*
+	 * the residual graph is kept by the arcs, nothing to build
+	 */
+	@Override
+	public Graph residualGraph()
+	{
+		return this.compile();
+	}
+	
+	@Override
+	public Graph edmondsKarp(Integer nodeU, Integer nodeV)
+	{
+		return this.solve(new EdmondsKarp(this.metrics), nodeU, nodeV);
+	}
+	
+	/*
+	 * the arcs are always updated in place, both modes are the same
+	 */
+	@Override
+	public Graph edmondsKarp(Integer nodeU, Integer nodeV, Boolean incremental)
+	{
+		return this.edmondsKarp(nodeU, nodeV);
+	}
+	
+	@Override
+	public Graph dinic(Integer nodeU, Integer nodeV)
+	{
+		return this.solve(new Dinic(this.metrics), nodeU, nodeV);
+	}
+	
+	@Override
+	public Graph boykovKolmogorov(Integer nodeU, Integer nodeV)
+	{
+		return this.solve(new BoykovKolmogorov(this.metrics), nodeU, nodeV);
+	}
+	
+	@Override
+	public Graph pushRelabel(Integer nodeU, Integer nodeV)
+	{
+		return this.solve(new PushRelabel(this.metrics), nodeU, nodeV);
+	}
+	
+	@Override
+	public Graph parallelPushRelabel(Integer nodeU, Integer nodeV, Integer threads)
+	{
+		return this.solve(new ParallelPushRelabel(threads, this.metrics), nodeU, nodeV);
+	}
+	
+	/*
+	 * run a solver on a copy of this graph, the copy holds the flow and max flow
+	 */
+	public FlowNetwork solve(FlowSolver solver, Integer nodeU, Integer nodeV)
+	{
+		if( !this.contains(nodeU) || !this.contains(nodeV) )
+		{
+			throw new IndexOutOfBoundsException("The nodes must be present in the graph");
+		}
+		
+		FlowNetwork h = this.copy().compile();
+		
+		solver.maxflow(h, nodeU - 1, nodeV - 1);
+		h.maxflow = h.outflow(nodeU - 1);
+		
+		return h;
+	}
+	
+	/*
+	 * net flow leaving node u, summed as a long so a flow larger than an int is reported instead of wrapping around
+	 */
+	protected int outflow(int u)
+	{
+		long sum = 0;
+		
+		for( int a = this.firstArc(u), end = this.endArc(u); a < end; ++a )
+		{
+			sum += this.capacity(a) - this.residual(a);
+		}
+		
+		return checked(sum);
+	}
+	
+	static int checked(long flow)
+	{
+		if( flow > Integer.MAX_VALUE )
+		{
+			throw new ArithmeticException("a flow of " + flow + " does not fit an int, use --capacity=long");
+		}
+		
+		return (int) flow;
+	}
+	
+	/*
+	 * nodes reachable from nodeU in the residual network, node i is bit i
+	 * one pass over the arcs with an int queue, nothing is made per node
+	 */
+	@Override
+	public BitSet sourceSide(Integer nodeU)
+	{
+		this.compile();
+		
+		BitSet visited = new BitSet(this.nodeCount() + 1);
+		int[] queue = new int[this.nodeCount()];
+		int head = 0, tail = 0;
+		
+		if( this.contains(nodeU) )
+		{
+			queue[tail++] = nodeU - 1;
+			visited.set(nodeU);
+		}
+		
+		while( head < tail )
+		{
+			int cur = queue[head++];
+			
+			for( int a = this.firstArc(cur), end = this.endArc(cur); a < end; ++a )
+			{
+				int next = this.head(a);
+				
+				if( this.residual(a) > 0 && !visited.get(next + 1) )
+				{
+					visited.set(next + 1);
+					queue[tail++] = next;
+				}
+			}
+		}
+		
+		return visited;
+	}
+	
+	/*
+	 * the sides of the cut are sets over the bits of sourceSide
+	 */
+	@Override
+	public Solution minimumCut(Integer nodeU)
+	{
+		return Solution.cut(this.sourceSide(nodeU), this.nodeCount());
+	}
+	
+	@Override
+	public String toString()
+	{
+		return this.edges().toString();
+	}
+}
@@ -0,0 +1,10 @@
+package image.segmentation;
+
+/*
+ * max flow algorithm working in place on a residual network
+ * returns the amount of flow it pushed from source to sink
+ */
+public interface FlowSolver
+{
+	public int maxflow(ResidualNetwork network, int source, int sink);
+}
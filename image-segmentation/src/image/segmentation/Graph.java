@@ -2,6 +2,7 @@ package image.segmentation;
 
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 
 public abstract class Graph implements GraphInterface
@@ -14,6 +15,9 @@ public abstract class Graph implements GraphInterface
 	
 	protected Integer maxflow;
 	
+	// told what the solvers do, see SolverMetrics
+	protected SolverMetrics metrics = SolverMetrics.NONE;
+	
 	public Graph()
 	{
 		this(0);
@@ -46,6 +50,7 @@ public abstract class Graph implements GraphInterface
 		this.nodes = g.nodes();
 		this.edges = g.edges();
 		this.maxflow = g.maxflow;
+		this.metrics = g.metrics;
 	}
 	
 	public Set<Integer> nodes()
@@ -76,4 +81,63 @@ public abstract class Graph implements GraphInterface
 	{
 		return this.maxflow;
 	}
+	
+	/*
+	 * number of edges, without the copy edges() makes
+	 */
+	public int edgeCount()
+	{
+		return this.edges.size();
+	}
+	
+	/*
+	 * listener the solvers of this graph report to, SolverMetrics.NONE by default
+	 */
+	public Graph metrics(SolverMetrics metrics)
+	{
+		this.metrics = metrics;
+		
+		return this;
+	}
+	
+	public SolverMetrics metrics()
+	{
+		return this.metrics;
+	}
+	
+	/*
+	 * release what the graph keeps outside the heap, like the file of a MappedGridGraph
+	 * nothing for the graphs held in memory, the graph can not be solved again afterwards but its maxflow stays
+	 */
+	public void close()
+	{}
+	
+	public Solution makePath(Map<Integer, Edge> in, Integer nodeU, Integer nodeV)
+	{
+		Solution path = null;
+		Integer parent = nodeV;
+		
+		path = new Solution();
+		
+		path.edges = new HashSet<Edge>();
+		path.minflow = Integer.MAX_VALUE;
+		
+		Edge e = null;
+		while( ( e = in.get(parent) ) != null )
+		{
+			if( e.flow() > 0 && e.flow() < path.minflow )
+			{
+				path.minflow = e.flow();
+			}
+			path.edges.add(e);
+			parent = e.source();
+		}
+		
+		if( path.edges.size() == 0 )
+		{
+			return null;
+		}
+		
+		return path;
+	}
 }
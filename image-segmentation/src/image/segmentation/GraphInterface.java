@@ -1,5 +1,6 @@
 package image.segmentation;
 
+import java.util.BitSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
@@ -51,8 +52,20 @@ public interface GraphInterface
 	public Graph residualGraph();
 	
 	public Graph edmondsKarp(Integer nodeU, Integer nodeV);
+	
+	public Graph edmondsKarp(Integer nodeU, Integer nodeV, Boolean incremental);
+	
+	public Graph dinic(Integer nodeU, Integer nodeV);
+	
+	public Graph boykovKolmogorov(Integer nodeU, Integer nodeV);
+	
+	public Graph pushRelabel(Integer nodeU, Integer nodeV);
+	
+	public Graph parallelPushRelabel(Integer nodeU, Integer nodeV, Integer threads);
 
 	public Solution makePath(Map<Integer, Edge> in, Integer nodeU, Integer nodeV);
 
 	public Solution minimumCut(Integer nodeU);
+	
+	public BitSet sourceSide(Integer nodeU);
 }
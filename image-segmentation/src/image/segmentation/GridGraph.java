@@ -0,0 +1,473 @@
+package image.segmentation;
+
+/*
+ * 4-connected pixel grid with a source and a sink, the graph Application builds from an input file
+ * node 1 is the source, nodes 2 .. rows * cols + 1 are the pixels in row-major order and the last node is the sink
+ * no adjacency is stored, the neighbors of a pixel are computed from its index
+ * every pixel p owns six arcs 6p .. 6p + 5: right, left, down, up, to the sink and back to the source,
+ * the source owns the arcs 6N .. 7N - 1 and the sink the reverse arcs 7N .. 8N - 1, N being the number of pixels
+ * arcs leaving the grid have no capacity and are their own twin
+ * every grid edge always exists, removing one sets its capacity to 0
+ */
+public class GridGraph extends FlowNetwork
+{
+	private static final int RIGHT = 0, LEFT = 1, DOWN = 2, UP = 3, TO_SINK = 4, TO_SOURCE = 5;
+	private static final int ARCS = 6;
+	
+	private int rows, cols, pixels;
+	
+	private int[] residuals;
+	private int[] capacities;
+	
+	public GridGraph(Integer rows, Integer cols)
+	{
+		this(rows, cols, true);
+	}
+	
+	/*
+	 * subclasses keeping the arcs somewhere else pass false and override the storage methods
+	 * (residual, capacity, store, push and createNetwork)
+	 */
+	protected GridGraph(Integer rows, Integer cols, boolean allocate)
+	{
+		super();
+		
+		if( rows < 0 || cols < 0 )
+		{
+			throw new IllegalArgumentException("grid dimensions can not be negative");
+		}
+		
+		this.rows = rows;
+		this.cols = cols;
+		this.pixels = rows * cols;
+		
+		if( allocate )
+		{
+			this.residuals = new int[8 * this.pixels];
+			this.capacities = new int[8 * this.pixels];
+		}
+	}
+	
+	public GridGraph(GridGraph g)
+	{
+		super();
+		
+		this.rows = g.rows;
+		this.cols = g.cols;
+		this.pixels = g.pixels;
+		this.residuals = g.residuals.clone();
+		this.capacities = g.capacities.clone();
+		this.maxflow = g.maxflow;
+		this.metrics = g.metrics;
+	}
+	
+	public Integer rows()
+	{
+		return this.rows;
+	}
+	
+	public Integer cols()
+	{
+		return this.cols;
+	}
+	
+	@Override
+	protected GridGraph copy()
+	{
+		return new GridGraph(this);
+	}
+	
+	/*
+	 * pixel next to p in direction d, -1 outside the grid
+	 */
+	private int neighbor(int p, int d)
+	{
+		switch( d )
+		{
+			case RIGHT:
+				return ( p + 1 ) % this.cols != 0 ? p + 1 : -1;
+			case LEFT:
+				return p % this.cols != 0 ? p - 1 : -1;
+			case DOWN:
+				return p + this.cols < this.pixels ? p + this.cols : -1;
+			case UP:
+				return p >= this.cols ? p - this.cols : -1;
+			default:
+				return -1;
+		}
+	}
+	
+	/*
+	 * arc carrying edge (u, v) of the residual network, -1 if the grid has no such edge
+	 */
+	private int gridArc(int u, int v)
+	{
+		int n = this.pixels;
+		
+		if( u == 0 && v >= 1 && v <= n )
+		{
+			return ARCS * n + v - 1;
+		}
+		
+		if( u < 1 || u > n )
+		{
+			return -1;
+		}
+		
+		int p = u - 1;
+		
+		if( v == n + 1 )
+		{
+			return ARCS * p + TO_SINK;
+		}
+		
+		for( int d = RIGHT; d <= UP; ++d )
+		{
+			int q = this.neighbor(p, d);
+			
+			if( q != -1 && q + 1 == v )
+			{
+				return ARCS * p + d;
+			}
+		}
+		
+		return -1;
+	}
+	
+	@Override
+	protected int arc(Integer nodeU, Integer nodeV)
+	{
+		if( !this.contains(nodeU) || !this.contains(nodeV) )
+		{
+			return -1;
+		}
+		
+		return this.gridArc(nodeU - 1, nodeV - 1);
+	}
+	
+	/*
+	 * set capacity and flow of an edge, flow already sent the other way over an n-link is kept
+	 */
+	private void assign(int a, int flow, int capacity)
+	{
+		if( flow > capacity )
+		{
+			throw new IllegalArgumentException("Flow can not exceed capacity");
+		}
+		
+		int t = this.twin(a);
+		int back = Math.max(0, this.capacity(t) - this.residual(t));
+		
+		this.store(a, capacity, capacity - flow + back);
+		this.store(t, this.capacity(t), this.capacity(t) - back + flow);
+	}
+	
+	@Override
+	protected void store(int arc, int capacity, int residual)
+	{
+		this.capacities[arc] = capacity;
+		this.residuals[arc] = residual;
+	}
+	
+	@Override
+	public Graph addNode(Integer node)
+	{
+		if( this.contains(node) )
+		{
+			return this;
+		}
+		
+		throw new UnsupportedOperationException("the nodes of a GridGraph are fixed by its dimensions");
+	}
+	
+	@Override
+	public Graph removeNode(Integer node)
+	{
+		throw new UnsupportedOperationException("the nodes of a GridGraph are fixed by its dimensions");
+	}
+	
+	@Override
+	public Graph addEdge(Integer nodeU, Integer nodeV, Integer flow, Integer capacity)
+	{
+		return this.setEdge(nodeU, nodeV, flow, capacity);
+	}
+	
+	@Override
+	public Graph setEdge(Integer nodeU, Integer nodeV, Integer flow, Integer capacity)
+	{
+		if( !this.contains(nodeU) || !this.contains(nodeV) )
+		{
+			throw new IndexOutOfBoundsException("The nodes must be present in the graph");
+		}
+		
+		int a = this.arc(nodeU, nodeV);
+		
+		if( a == -1 )
+		{
+			throw new IllegalArgumentException("(" + nodeU + ", " + nodeV + ") is not an edge of a " + this.rows + "x" + this.cols + " grid");
+		}
+		
+		this.assign(a, flow, capacity);
+		
+		return this;
+	}
+	
+	@Override
+	public Graph removeEdge(Integer nodeU, Integer nodeV)
+	{
+		int a = this.arc(nodeU, nodeV);
+		
+		if( a != -1 )
+		{
+			this.assign(a, 0, 0);
+		}
+		
+		return this;
+	}
+	
+	/*
+	 * set every capacity from the cost layers of an input file, all flows are reset
+	 */
+	public GridGraph load(PixelCosts costs)
+	{
+		if( costs.rows != this.rows || costs.cols != this.cols )
+		{
+			throw new IllegalArgumentException("a " + costs.rows + "x" + costs.cols + " image does not fit a " + this.rows + "x" + this.cols + " grid");
+		}
+		
+		int n = this.pixels;
+		
+		for( int p = 0; p < n; ++p )
+		{
+			this.store(ARCS * n + p, costs.source[p], costs.source[p]);
+			this.store(7 * n + p, 0, 0);
+			this.store(ARCS * p + TO_SINK, costs.sink[p], costs.sink[p]);
+			this.store(ARCS * p + TO_SOURCE, 0, 0);
+		}
+		
+		for( int r = 0, i = 0; r < this.rows; ++r )
+		{
+			for( int c = 0; c + 1 < this.cols; ++c, ++i )
+			{
+				int p = r * this.cols + c;
+				
+				this.store(ARCS * p + RIGHT, costs.horizontal[i], costs.horizontal[i]);
+				this.store(ARCS * ( p + 1 ) + LEFT, costs.horizontal[i], costs.horizontal[i]);
+			}
+		}
+		
+		for( int p = 0; p < costs.vertical.length; ++p )
+		{
+			this.store(ARCS * p + DOWN, costs.vertical[p], costs.vertical[p]);
+			this.store(ARCS * ( p + this.cols ) + UP, costs.vertical[p], costs.vertical[p]);
+		}
+		
+		return this;
+	}
+	
+	/*
+	 * cost layer holding the capacity of an arc, in the order of PixelCosts: 0 source, 1 sink, 2 horizontal, 3 vertical,
+	 * -1 for the reverse arcs of the terminal edges and the arcs leaving the grid, which have no capacity
+	 */
+	int layer(int arc)
+	{
+		int n = this.pixels;
+		
+		if( arc >= 7 * n )
+		{
+			return -1;
+		}
+		
+		if( arc >= ARCS * n )
+		{
+			return 0;
+		}
+		
+		int p = arc / ARCS, d = arc - ARCS * p;
+		
+		if( d == TO_SINK )
+		{
+			return 1;
+		}
+		
+		if( d == TO_SOURCE || this.neighbor(p, d) == -1 )
+		{
+			return -1;
+		}
+		
+		return d == RIGHT || d == LEFT ? 2 : 3;
+	}
+	
+	/*
+	 * index of the capacity of an arc in its layer, for an arc whose layer is not -1
+	 * both arcs of an n-link read the penalty stored for the pixel on its left or above it
+	 */
+	int layerIndex(int arc)
+	{
+		int n = this.pixels;
+		
+		if( arc >= ARCS * n )
+		{
+			return arc - ARCS * n;
+		}
+		
+		int p = arc / ARCS, d = arc - ARCS * p;
+		
+		if( d == LEFT || d == UP )
+		{
+			p = this.neighbor(p, d);
+		}
+		
+		return d == RIGHT || d == LEFT ? p / this.cols * ( this.cols - 1 ) + p % this.cols : p;
+	}
+	
+	@Override
+	public Graph createNetwork()
+	{
+		System.arraycopy(this.capacities, 0, this.residuals, 0, this.residuals.length);
+		
+		return this;
+	}
+	
+	@Override
+	protected boolean isEdge(int arc)
+	{
+		int n = this.pixels;
+		
+		if( arc >= ARCS * n )
+		{
+			return arc < 7 * n;
+		}
+		
+		int d = arc % ARCS;
+		
+		if( d == TO_SINK )
+		{
+			return true;
+		}
+		
+		return d != TO_SOURCE && this.neighbor(arc / ARCS, d) != -1;
+	}
+	
+	@Override
+	protected int capacity(int arc)
+	{
+		return this.capacities[arc];
+	}
+	
+	@Override
+	public int nodeCount()
+	{
+		return this.pixels + 2;
+	}
+	
+	@Override
+	public int firstArc(int u)
+	{
+		if( u == 0 )
+		{
+			return ARCS * this.pixels;
+		}
+		
+		if( u == this.pixels + 1 )
+		{
+			return 7 * this.pixels;
+		}
+		
+		return ARCS * (u - 1);
+	}
+	
+	@Override
+	public int endArc(int u)
+	{
+		if( u == 0 )
+		{
+			return 7 * this.pixels;
+		}
+		
+		if( u == this.pixels + 1 )
+		{
+			return 8 * this.pixels;
+		}
+		
+		return ARCS * u;
+	}
+	
+	@Override
+	public int head(int arc)
+	{
+		int n = this.pixels;
+		
+		if( arc >= 7 * n )
+		{
+			return arc - 7 * n + 1;
+		}
+		
+		if( arc >= ARCS * n )
+		{
+			return arc - ARCS * n + 1;
+		}
+		
+		int p = arc / ARCS, d = arc - ARCS * p;
+		
+		if( d == TO_SINK )
+		{
+			return n + 1;
+		}
+		
+		if( d == TO_SOURCE )
+		{
+			return 0;
+		}
+		
+		int q = this.neighbor(p, d);
+		
+		return q == -1 ? p + 1 : q + 1;
+	}
+	
+	@Override
+	public int twin(int arc)
+	{
+		int n = this.pixels;
+		
+		if( arc >= 7 * n )
+		{
+			return ARCS * (arc - 7 * n) + TO_SINK;
+		}
+		
+		if( arc >= ARCS * n )
+		{
+			return ARCS * (arc - ARCS * n) + TO_SOURCE;
+		}
+		
+		int p = arc / ARCS, d = arc - ARCS * p;
+		
+		if( d == TO_SINK )
+		{
+			return 7 * n + p;
+		}
+		
+		if( d == TO_SOURCE )
+		{
+			return ARCS * n + p;
+		}
+		
+		int q = this.neighbor(p, d);
+		
+		// right <-> left and down <-> up only differ in the last bit
+		return q == -1 ? arc : ARCS * q + ( d ^ 1 );
+	}
+	
+	@Override
+	public int residual(int arc)
+	{
+		return this.residuals[arc];
+	}
+	
+	@Override
+	public void push(int arc, int flow)
+	{
+		this.residuals[arc] -= flow;
+		this.residuals[this.twin(arc)] += flow;
+	}
+}
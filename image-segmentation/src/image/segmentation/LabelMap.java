@@ -0,0 +1,312 @@
+package image.segmentation;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/*
+ * label of every pixel of a rows x cols image, one bit per pixel in row-major order, set for the background
+ * the writers go through the pixels row by row with a buffer of fixed size, however large the image is:
+ * text (the B / F letters Application has always written), PBM (P4) or PNG (1 bit gray), the foreground being black
+ */
+public class LabelMap
+{
+	private static final int BUFFER = 1 << 16;
+	
+	private int rows, cols;
+	private BitSet background;
+	
+	public LabelMap(int rows, int cols)
+	{
+		if( rows < 0 || cols < 0 )
+		{
+			throw new IllegalArgumentException("image dimensions can not be negative");
+		}
+		
+		this.rows = rows;
+		this.cols = cols;
+		this.background = new BitSet(rows * cols);
+	}
+	
+	/*
+	 * labels of a cut of the graph of an image, pixel p is node p + 2
+	 */
+	public static LabelMap of(Solution mincut, int rows, int cols)
+	{
+		LabelMap labels = new LabelMap(rows, cols);
+		Iterator<Integer> bg = mincut.background.iterator();
+		
+		while( bg.hasNext() )
+		{
+			int p = bg.next() - 2;
+			
+			if( p >= 0 && p < rows * cols )
+			{
+				labels.background.set(p);
+			}
+		}
+		
+		return labels;
+	}
+	
+	/*
+	 * labels of the nodes on the source side of a cut, node i being bit i, copied a word at a time
+	 */
+	public static LabelMap of(BitSet sourceSide, int rows, int cols)
+	{
+		LabelMap labels = new LabelMap(rows, cols);
+		
+		labels.background = sourceSide.get(2, rows * cols + 2);
+		
+		return labels;
+	}
+	
+	/*
+	 * the nodes on the source side of the cut: the source (node 1) and the background, pixel p being node p + 2
+	 */
+	public BitSet sourceSide()
+	{
+		BitSet side = new BitSet(this.rows * this.cols + 3);
+		
+		side.set(1);
+		
+		for( int p = this.background.nextSetBit(0); p >= 0; p = this.background.nextSetBit(p + 1) )
+		{
+			side.set(p + 2);
+		}
+		
+		return side;
+	}
+	
+	public int rows()
+	{
+		return this.rows;
+	}
+	
+	public int cols()
+	{
+		return this.cols;
+	}
+	
+	public boolean isBackground(int p)
+	{
+		return this.background.get(p);
+	}
+	
+	public void setBackground(int p, boolean background)
+	{
+		this.background.set(p, background);
+	}
+	
+	/*
+	 * text, pbm or png depending on the extension of the file name
+	 */
+	public void write(File file) throws IOException
+	{
+		String name = file.getName().toLowerCase();
+		OutputStream out = new FileOutputStream(file);
+		
+		try
+		{
+			if( name.endsWith(".pbm") )
+			{
+				this.writePBM(out);
+			}
+			else if( name.endsWith(".png") )
+			{
+				this.writePNG(out);
+			}
+			else
+			{
+				this.writeText(out);
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+	
+	/*
+	 * one line per row, each pixel written as "B " or "F "
+	 */
+	public void writeText(OutputStream out) throws IOException
+	{
+		byte[] newline = System.lineSeparator().getBytes("US-ASCII");
+		byte[] buffer = new byte[BUFFER];
+		int size = 0;
+		
+		for( int r = 0; r < this.rows; ++r )
+		{
+			for( int c = 0; c < this.cols; ++c )
+			{
+				if( size + 2 > buffer.length )
+				{
+					out.write(buffer, 0, size);
+					size = 0;
+				}
+				
+				buffer[size++] = (byte) ( this.background.get(r * this.cols + c) ? 'B' : 'F' );
+				buffer[size++] = ' ';
+			}
+			
+			if( size + newline.length > buffer.length )
+			{
+				out.write(buffer, 0, size);
+				size = 0;
+			}
+			
+			System.arraycopy(newline, 0, buffer, size, newline.length);
+			size += newline.length;
+		}
+		
+		out.write(buffer, 0, size);
+		out.flush();
+	}
+	
+	/*
+	 * binary portable bitmap, 1 is black
+	 */
+	public void writePBM(OutputStream out) throws IOException
+	{
+		out.write(( "P4\n" + this.cols + " " + this.rows + "\n" ).getBytes("US-ASCII"));
+		
+		byte[] buffer = new byte[Math.max(BUFFER, this.rowBytes())];
+		int size = 0;
+		
+		for( int r = 0; r < this.rows; ++r )
+		{
+			if( size + this.rowBytes() > buffer.length )
+			{
+				out.write(buffer, 0, size);
+				size = 0;
+			}
+			
+			size = this.packRow(r, false, buffer, size);
+		}
+		
+		out.write(buffer, 0, size);
+		out.flush();
+	}
+	
+	/*
+	 * 1 bit gray png, 1 is white, the rows are deflated as they are packed and written in IDAT chunks of at most BUFFER bytes
+	 */
+	public void writePNG(OutputStream out) throws IOException
+	{
+		DataOutputStream data = new DataOutputStream(out);
+		byte[] header = new byte[13];
+		
+		data.write(new byte[] { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' });
+		
+		// width, height, bit depth 1, gray, deflate, no filter, no interlace
+		header[0] = (byte) ( this.cols >>> 24 );
+		header[1] = (byte) ( this.cols >>> 16 );
+		header[2] = (byte) ( this.cols >>> 8 );
+		header[3] = (byte) this.cols;
+		header[4] = (byte) ( this.rows >>> 24 );
+		header[5] = (byte) ( this.rows >>> 16 );
+		header[6] = (byte) ( this.rows >>> 8 );
+		header[7] = (byte) this.rows;
+		header[8] = 1;
+		chunk(data, "IHDR", header, header.length);
+		
+		Deflater deflater = new Deflater();
+		byte[] row = new byte[1 + this.rowBytes()];
+		byte[] compressed = new byte[BUFFER];
+		int size = 0;
+		
+		try
+		{
+			for( int r = 0; r <= this.rows; ++r )
+			{
+				if( r < this.rows )
+				{
+					// filter type 0, the row as it is
+					row[0] = 0;
+					this.packRow(r, true, row, 1);
+					deflater.setInput(row);
+				}
+				else
+				{
+					deflater.finish();
+				}
+				
+				while( r == this.rows ? !deflater.finished() : !deflater.needsInput() )
+				{
+					size += deflater.deflate(compressed, size, compressed.length - size);
+					
+					if( size == compressed.length )
+					{
+						chunk(data, "IDAT", compressed, size);
+						size = 0;
+					}
+				}
+			}
+		}
+		finally
+		{
+			deflater.end();
+		}
+		
+		if( size > 0 )
+		{
+			chunk(data, "IDAT", compressed, size);
+		}
+		
+		chunk(data, "IEND", compressed, 0);
+		data.flush();
+	}
+	
+	private static void chunk(DataOutputStream out, String type, byte[] data, int size) throws IOException
+	{
+		CRC32 crc = new CRC32();
+		byte[] name = type.getBytes("US-ASCII");
+		
+		crc.update(name);
+		crc.update(data, 0, size);
+		out.writeInt(size);
+		out.write(name);
+		out.write(data, 0, size);
+		out.writeInt((int) crc.getValue());
+	}
+	
+	private int rowBytes()
+	{
+		return ( this.cols + 7 ) / 8;
+	}
+	
+	/*
+	 * the pixels of row r as bits, most significant first, set for the background if background is true and for the foreground otherwise
+	 * returns the index after the row
+	 */
+	private int packRow(int r, boolean background, byte[] buffer, int offset)
+	{
+		int start = r * this.cols;
+		
+		for( int i = 0; i < this.rowBytes(); ++i )
+		{
+			int b = 0;
+			
+			for( int k = 0; k < 8; ++k )
+			{
+				int c = 8 * i + k;
+				
+				if( c < this.cols && this.background.get(start + c) == background )
+				{
+					b |= 0x80 >>> k;
+				}
+			}
+			
+			buffer[offset + i] = (byte) b;
+		}
+		
+		return offset + this.rowBytes();
+	}
+}
@@ -0,0 +1,10 @@
+package image.segmentation;
+
+/*
+ * max flow algorithm working in place on a residual network with long capacities
+ * returns the amount of flow it pushed from source to sink
+ */
+public interface LongFlowSolver
+{
+	public long maxflow(LongResidualNetwork network, int source, int sink);
+}
@@ -0,0 +1,139 @@
+package image.segmentation;
+
+import java.util.BitSet;
+
+/*
+ * 4-connected pixel grid with long capacities, for images whose max flow does not fit an int
+ * the arcs are numbered like the ones of a GridGraph, which computes them, only the residuals are kept here
+ * node 0 is the source, nodes 1 .. rows * cols the pixels in row-major order and the last node the sink
+ */
+public class LongGrid implements LongResidualNetwork
+{
+	private GridGraph arcs;
+	private int rows, cols;
+	
+	private long[] residuals;
+	
+	public LongGrid(int rows, int cols)
+	{
+		this.arcs = new GridGraph(rows, cols, false);
+		this.rows = rows;
+		this.cols = cols;
+		this.residuals = new long[8 * rows * cols];
+	}
+	
+	public LongGrid(PixelCosts costs)
+	{
+		this(costs.rows, costs.cols);
+		
+		int[][] layers = new int[][] { costs.source, costs.sink, costs.horizontal, costs.vertical };
+		
+		for( int a = 0; a < this.residuals.length; ++a )
+		{
+			int l = this.arcs.layer(a);
+			
+			this.residuals[a] = l == -1 ? 0 : layers[l][this.arcs.layerIndex(a)];
+		}
+	}
+	
+	/*
+	 * set every capacity from cost layers laid out like the ones of PixelCosts, all flows are reset
+	 */
+	public LongGrid load(long[] source, long[] sink, long[] horizontal, long[] vertical)
+	{
+		long[][] layers = new long[][] { source, sink, horizontal, vertical };
+		
+		for( int a = 0; a < this.residuals.length; ++a )
+		{
+			int l = this.arcs.layer(a);
+			
+			this.residuals[a] = l == -1 ? 0 : layers[l][this.arcs.layerIndex(a)];
+		}
+		
+		return this;
+	}
+	
+	public int rows()
+	{
+		return this.rows;
+	}
+	
+	public int cols()
+	{
+		return this.cols;
+	}
+	
+	/*
+	 * nodes reachable from the source in the residual network, graph node i (network node i - 1) is bit i
+	 */
+	public BitSet sourceSide()
+	{
+		BitSet visited = new BitSet(this.nodeCount() + 1);
+		int[] queue = new int[this.nodeCount()];
+		int head = 0, tail = 0;
+		
+		queue[tail++] = 0;
+		visited.set(1);
+		
+		while( head < tail )
+		{
+			int cur = queue[head++];
+			
+			for( int a = this.firstArc(cur), end = this.endArc(cur); a < end; ++a )
+			{
+				int next = this.head(a);
+				
+				if( this.residuals[a] > 0 && !visited.get(next + 1) )
+				{
+					visited.set(next + 1);
+					queue[tail++] = next;
+				}
+			}
+		}
+		
+		return visited;
+	}
+	
+	@Override
+	public int nodeCount()
+	{
+		return this.arcs.nodeCount();
+	}
+	
+	@Override
+	public int firstArc(int u)
+	{
+		return this.arcs.firstArc(u);
+	}
+	
+	@Override
+	public int endArc(int u)
+	{
+		return this.arcs.endArc(u);
+	}
+	
+	@Override
+	public int head(int arc)
+	{
+		return this.arcs.head(arc);
+	}
+	
+	@Override
+	public int twin(int arc)
+	{
+		return this.arcs.twin(arc);
+	}
+	
+	@Override
+	public long residual(int arc)
+	{
+		return this.residuals[arc];
+	}
+	
+	@Override
+	public void push(int arc, long flow)
+	{
+		this.residuals[arc] -= flow;
+		this.residuals[this.arcs.twin(arc)] += flow;
+	}
+}
@@ -0,0 +1,11 @@
+package image.segmentation;
+
+/*
+ * residual network with long capacities, for images whose flow does not fit an int
+ */
+public interface LongResidualNetwork extends ArcNetwork
+{
+	public long residual(int arc);
+	
+	public void push(int arc, long flow);
+}
@@ -0,0 +1,183 @@
+package image.segmentation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/*
+ * pixel grid whose arcs live outside the java heap, in a memory-mapped file
+ * the layout is the one of GridGraph: 8N residual capacities followed by 8N capacities, N being the number of pixels
+ * a single mapping can not be larger than 2GB, so the file is mapped in chunks of CHUNK ints
+ * the solvers read and write the mapped memory directly, only their per node arrays are on the heap
+ */
+public class MappedGridGraph extends GridGraph
+{
+	private static final int SHIFT = 28, CHUNK = 1 << SHIFT, MASK = CHUNK - 1;
+	
+	private File file;
+	private long arcs;
+	
+	private MappedByteBuffer[] maps;
+	private IntBuffer[] chunks;
+	
+	/*
+	 * the arcs go to a temporary file that is removed by close, or when the program exits
+	 */
+	public MappedGridGraph(Integer rows, Integer cols) throws IOException
+	{
+		this(rows, cols, (File) null);
+	}
+	
+	/*
+	 * the arcs go to a temporary file in directory, or in the default temporary directory if it is null
+	 */
+	public MappedGridGraph(Integer rows, Integer cols, File directory) throws IOException
+	{
+		super(rows, cols, false);
+		
+		if( 8L * rows * cols > Integer.MAX_VALUE )
+		{
+			throw new IllegalArgumentException("a " + rows + "x" + cols + " grid has more arcs than can be numbered");
+		}
+		
+		this.file = File.createTempFile("grid", ".arcs", directory);
+		this.file.deleteOnExit();
+		this.arcs = 8L * rows * cols;
+		this.map();
+	}
+	
+	public MappedGridGraph(MappedGridGraph g) throws IOException
+	{
+		this(g.rows(), g.cols(), g.file.getParentFile());
+		
+		this.maxflow = g.maxflow;
+		this.metrics = g.metrics;
+		
+		for( int i = 0; i < this.chunks.length; ++i )
+		{
+			IntBuffer from = g.chunks[i].duplicate();
+			
+			from.clear();
+			this.chunks[i].duplicate().put(from);
+		}
+	}
+	
+	private void map() throws IOException
+	{
+		long ints = 2 * this.arcs;
+		int count = (int) ( ( ints + CHUNK - 1 ) / CHUNK );
+		RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
+		
+		this.maps = new MappedByteBuffer[count];
+		this.chunks = new IntBuffer[count];
+		
+		try
+		{
+			FileChannel channel = raf.getChannel();
+			
+			raf.setLength(4 * ints);
+			
+			for( int i = 0; i < count; ++i )
+			{
+				long start = (long) i * CHUNK;
+				long length = Math.min(CHUNK, ints - start);
+				
+				// the mapping stays valid after the channel is closed
+				this.maps[i] = channel.map(FileChannel.MapMode.READ_WRITE, 4 * start, 4 * length);
+				this.chunks[i] = this.maps[i].order(ByteOrder.nativeOrder()).asIntBuffer();
+			}
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+	
+	@Override
+	protected MappedGridGraph copy()
+	{
+		try
+		{
+			return new MappedGridGraph(this);
+		}
+		catch( IOException e )
+		{
+			throw new IllegalStateException("could not map a copy of " + this.file, e);
+		}
+	}
+	
+	/*
+	 * drop the mappings and delete the file, the mapped memory is given back once the buffers are collected
+	 */
+	@Override
+	public void close()
+	{
+		this.maps = null;
+		this.chunks = null;
+		this.file.delete();
+	}
+	
+	/*
+	 * write the arcs out to the file
+	 */
+	public void force()
+	{
+		for( MappedByteBuffer m : this.maps )
+		{
+			m.force();
+		}
+	}
+	
+	private int get(long i)
+	{
+		return this.chunks[(int) ( i >>> SHIFT )].get((int) ( i & MASK ));
+	}
+	
+	private void put(long i, int value)
+	{
+		this.chunks[(int) ( i >>> SHIFT )].put((int) ( i & MASK ), value);
+	}
+	
+	@Override
+	public int residual(int arc)
+	{
+		return this.get(arc);
+	}
+	
+	@Override
+	protected int capacity(int arc)
+	{
+		return this.get(this.arcs + arc);
+	}
+	
+	@Override
+	protected void store(int arc, int capacity, int residual)
+	{
+		this.put(this.arcs + arc, capacity);
+		this.put(arc, residual);
+	}
+	
+	@Override
+	public void push(int arc, int flow)
+	{
+		int t = this.twin(arc);
+		
+		this.put(arc, this.get(arc) - flow);
+		this.put(t, this.get(t) + flow);
+	}
+	
+	@Override
+	public Graph createNetwork()
+	{
+		for( long a = 0; a < this.arcs; ++a )
+		{
+			this.put(a, this.get(this.arcs + a));
+		}
+		
+		return this;
+	}
+}
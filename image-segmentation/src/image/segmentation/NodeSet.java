@@ -0,0 +1,152 @@
+package image.segmentation;
+
+import java.util.AbstractSet;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/*
+ * set of nodes kept as the bits of a BitSet, node i is bit i
+ * the Integer objects are only made when the set is iterated
+ */
+public class NodeSet extends AbstractSet<Integer>
+{
+	private BitSet bits;
+	
+	public NodeSet(BitSet bits)
+	{
+		this.bits = bits;
+	}
+	
+	public BitSet bits()
+	{
+		return this.bits;
+	}
+	
+	@Override
+	public int size()
+	{
+		return this.bits.cardinality();
+	}
+	
+	@Override
+	public boolean isEmpty()
+	{
+		return this.bits.isEmpty();
+	}
+	
+	@Override
+	public boolean contains(Object o)
+	{
+		if( !( o instanceof Integer ) )
+		{
+			return false;
+		}
+		
+		int node = (Integer) o;
+		
+		return node >= 0 && this.bits.get(node);
+	}
+	
+	@Override
+	public boolean add(Integer node)
+	{
+		if( node < 0 )
+		{
+			throw new IllegalArgumentException("nodes can not be negative");
+		}
+		
+		if( this.bits.get(node) )
+		{
+			return false;
+		}
+		
+		this.bits.set(node);
+		return true;
+	}
+	
+	@Override
+	public boolean remove(Object o)
+	{
+		if( !this.contains(o) )
+		{
+			return false;
+		}
+		
+		this.bits.clear((Integer) o);
+		return true;
+	}
+	
+	@Override
+	public void clear()
+	{
+		this.bits.clear();
+	}
+	
+	@Override
+	public boolean equals(Object o)
+	{
+		if( o instanceof NodeSet )
+		{
+			return this.bits.equals(( (NodeSet) o ).bits);
+		}
+		
+		return super.equals(o);
+	}
+	
+	@Override
+	public int hashCode()
+	{
+		// same as the hash code of a HashSet of the same nodes
+		int h = 0;
+		
+		for( int i = this.bits.nextSetBit(0); i >= 0; i = this.bits.nextSetBit(i + 1) )
+		{
+			h += i;
+		}
+		
+		return h;
+	}
+	
+	@Override
+	public Iterator<Integer> iterator()
+	{
+		return new Iterator<Integer>()
+		{
+			private int next = NodeSet.this.bits.nextSetBit(0);
+			private int last = -1;
+			
+			@Override
+			public boolean hasNext()
+			{
+				return this.next >= 0;
+			}
+			
+			@Override
+			public Integer next()
+			{
+				if( this.next < 0 )
+				{
+					throw new NoSuchElementException();
+				}
+				
+				this.last = this.next;
+				this.next = NodeSet.this.bits.nextSetBit(this.next + 1);
+				
+				return this.last;
+			}
+			
+			@Override
+			public void remove()
+			{
+				if( this.last < 0 )
+				{
+					throw new IllegalStateException();
+				}
+				
+				NodeSet.this.bits.clear(this.last);
+				this.last = -1;
+			}
+		};
+	}
+}
@@ -0,0 +1,375 @@
+package image.segmentation;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/*
+ * synchronous parallel push-relabel on a ForkJoinPool
+ * every round first discharges all active nodes in parallel with the labels frozen, then relabels in parallel
+ * the nodes that kept some excess, computing the new labels from the old ones
+ * with frozen labels u only pushes over (u, v) when label(u) = label(v) + 1, so two threads never push over the two
+ * arcs of the same pair and the residual capacities need no locking, only the excess is shared and updated atomically
+ * global relabeling runs between rounds, like in PushRelabel nodes cut off from the sink get labels above n
+ */
+public class ParallelPushRelabel implements FlowSolver
+{
+	// nodes handled by one task before it stops splitting
+	private static final int CHUNK = 256;
+	private static final int ALPHA = 6, RELABEL_WORK = 12;
+	
+	private int threads;
+	
+	private ResidualNetwork network;
+	private int n, source, sink;
+	
+	private int[] label;
+	private AtomicIntegerArray excess;
+	// round in which a node was last put on the next active list
+	private AtomicIntegerArray queued;
+	private int round;
+	
+	// active nodes of this round, the ones to relabel and the ones for the next round
+	private int[] active, next, relabel, labels;
+	private int activeCount, relabelCount;
+	private int nextCount;
+	
+	private long work, threshold;
+	
+	private SolverMetrics metrics;
+	private long pushes, relabels;
+	
+	public ParallelPushRelabel()
+	{
+		this(Runtime.getRuntime().availableProcessors());
+	}
+	
+	public ParallelPushRelabel(int threads)
+	{
+		this(threads, SolverMetrics.NONE);
+	}
+	
+	public ParallelPushRelabel(int threads, SolverMetrics metrics)
+	{
+		if( threads < 1 )
+		{
+			throw new IllegalArgumentException("number of threads must be at least 1");
+		}
+		
+		this.threads = threads;
+		this.metrics = metrics;
+	}
+	
+	@Override
+	public int maxflow(ResidualNetwork network, int source, int sink)
+	{
+		this.network = network;
+		this.n = network.nodeCount();
+		this.source = source;
+		this.sink = sink;
+		
+		int n = this.n;
+		
+		this.label = new int[n];
+		this.excess = new AtomicIntegerArray(n);
+		this.queued = new AtomicIntegerArray(n);
+		this.active = new int[n];
+		this.next = new int[n];
+		this.relabel = new int[n];
+		this.labels = new int[n];
+		this.round = 0;
+		
+		long arcs = 0;
+		for( int u = 0; u < n; ++u )
+		{
+			arcs += network.endArc(u) - network.firstArc(u);
+		}
+		this.threshold = ALPHA * (long) n + arcs;
+		this.pushes = this.relabels = 0;
+		
+		for( int a = network.firstArc(source), end = network.endArc(source); a < end; ++a )
+		{
+			int f = network.residual(a);
+			
+			if( f > 0 )
+			{
+				network.push(a, f);
+				this.excess.addAndGet(network.head(a), f);
+				this.excess.addAndGet(source, -f);
+			}
+		}
+		
+		ForkJoinPool pool = new ForkJoinPool(this.threads);
+		
+		try
+		{
+			this.globalRelabel();
+			
+			while( this.activeCount > 0 )
+			{
+				this.round++;
+				this.nextCount = 0;
+				this.relabelCount = 0;
+				
+				pool.invoke(new Discharge(0, this.activeCount));
+				pool.invoke(new Relabel(0, this.relabelCount));
+				this.relabels += this.relabelCount;
+				
+				// new labels only become visible once every node of the round has computed its own
+				for( int i = 0; i < this.relabelCount; ++i )
+				{
+					int u = this.relabel[i];
+					
+					this.label[u] = this.labels[i];
+					
+					if( this.label[u] < 2 * n && this.queued.getAndSet(u, this.round) != this.round )
+					{
+						this.next[this.nextCount++] = u;
+					}
+				}
+				
+				if( this.work > this.threshold )
+				{
+					this.globalRelabel();
+					continue;
+				}
+				
+				int[] swap = this.active;
+				this.active = this.next;
+				this.next = swap;
+				this.activeCount = this.nextCount;
+			}
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+		
+		this.metrics.pushRelabel(this.pushes, this.relabels);
+		
+		return this.excess.get(sink);
+	}
+	
+	/*
+	 * push the excess of u over admissible arcs, returns true if some excess is left
+	 * count holds the number of nodes put in activated, then the number of pushes
+	 */
+	private boolean discharge(int u, int[] activated, int[] count)
+	{
+		ResidualNetwork net = this.network;
+		int l = this.label[u];
+		
+		for( int a = net.firstArc(u), end = net.endArc(u); a < end; ++a )
+		{
+			int e = this.excess.get(u);
+			
+			if( e <= 0 )
+			{
+				return false;
+			}
+			
+			int v = net.head(a);
+			
+			// check the label first, the residual of an arc that is not admissible may be changing under us
+			if( l != this.label[v] + 1 )
+			{
+				continue;
+			}
+			
+			int r = net.residual(a);
+			
+			if( r <= 0 )
+			{
+				continue;
+			}
+			
+			int f = Math.min(e, r);
+			
+			net.push(a, f);
+			this.excess.addAndGet(u, -f);
+			count[1]++;
+			
+			if( this.excess.getAndAdd(v, f) == 0 && v != this.source && v != this.sink )
+			{
+				activated[count[0]++] = v;
+			}
+		}
+		
+		return this.excess.get(u) > 0;
+	}
+	
+	/*
+	 * late excess can leave u with an admissible arc, the label then stays where it is
+	 */
+	private int newLabel(int u)
+	{
+		ResidualNetwork net = this.network;
+		int min = 2 * this.n;
+		
+		for( int a = net.firstArc(u), end = net.endArc(u); a < end; ++a )
+		{
+			if( net.residual(a) > 0 )
+			{
+				min = Math.min(min, this.label[net.head(a)] + 1);
+			}
+		}
+		
+		return Math.max(min, this.label[u]);
+	}
+	
+	private synchronized void collect(int[] activated, int activatedCount, int[] left, int leftCount, long done, long pushes)
+	{
+		for( int i = 0; i < activatedCount; ++i )
+		{
+			int v = activated[i];
+			
+			if( this.queued.getAndSet(v, this.round) != this.round )
+			{
+				this.next[this.nextCount++] = v;
+			}
+		}
+		
+		System.arraycopy(left, 0, this.relabel, this.relabelCount, leftCount);
+		this.relabelCount += leftCount;
+		this.work += done;
+		this.pushes += pushes;
+	}
+	
+	/*
+	 * exact distances to the sink, or to the source plus n, then every node with excess becomes active
+	 */
+	private void globalRelabel()
+	{
+		ResidualNetwork net = this.network;
+		int n = this.n;
+		int[] queue = this.next;
+		int visited = 0;
+		
+		Arrays.fill(this.label, 2 * n);
+		this.label[this.sink] = 0;
+		this.label[this.source] = n;
+		
+		for( int root : new int[] { this.sink, this.source } )
+		{
+			int head = 0, tail = 0;
+			
+			queue[tail++] = root;
+			
+			while( head < tail )
+			{
+				int v = queue[head++];
+				
+				for( int a = net.firstArc(v), end = net.endArc(v); a < end; ++a )
+				{
+					int u = net.head(a);
+					
+					if( this.label[u] == 2 * n && net.residual(net.twin(a)) > 0 )
+					{
+						this.label[u] = this.label[v] + 1;
+						queue[tail++] = u;
+					}
+				}
+			}
+			
+			visited += tail;
+		}
+		
+		this.metrics.search(visited);
+		
+		this.round++;
+		this.activeCount = 0;
+		
+		for( int u = 0; u < n; ++u )
+		{
+			if( u != this.source && u != this.sink && this.label[u] < 2 * n && this.excess.get(u) > 0 )
+			{
+				this.active[this.activeCount++] = u;
+				this.queued.set(u, this.round);
+			}
+		}
+		
+		this.work = 0;
+	}
+	
+	private class Discharge extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private int from, to;
+		
+		public Discharge(int from, int to)
+		{
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			if( this.to - this.from > CHUNK )
+			{
+				int mid = (this.from + this.to) >>> 1;
+				
+				invokeAll(new Discharge(this.from, mid), new Discharge(mid, this.to));
+				return;
+			}
+			
+			ResidualNetwork net = ParallelPushRelabel.this.network;
+			int[] active = ParallelPushRelabel.this.active;
+			int[] activated = new int[64];
+			int[] count = new int[2];
+			int[] left = new int[this.to - this.from];
+			int leftCount = 0;
+			long done = 0;
+			
+			for( int i = this.from; i < this.to; ++i )
+			{
+				int u = active[i];
+				
+				if( activated.length - count[0] < net.endArc(u) - net.firstArc(u) )
+				{
+					activated = Arrays.copyOf(activated, 2 * activated.length + net.endArc(u) - net.firstArc(u));
+				}
+				
+				if( ParallelPushRelabel.this.discharge(u, activated, count) )
+				{
+					left[leftCount++] = u;
+					done += net.endArc(u) - net.firstArc(u) + RELABEL_WORK;
+				}
+			}
+			
+			ParallelPushRelabel.this.collect(activated, count[0], left, leftCount, done, count[1]);
+		}
+	}
+	
+	private class Relabel extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private int from, to;
+		
+		public Relabel(int from, int to)
+		{
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			if( this.to - this.from > CHUNK )
+			{
+				int mid = (this.from + this.to) >>> 1;
+				
+				invokeAll(new Relabel(this.from, mid), new Relabel(mid, this.to));
+				return;
+			}
+			
+			for( int i = this.from; i < this.to; ++i )
+			{
+				ParallelPushRelabel.this.labels[i] = ParallelPushRelabel.this.newLabel(ParallelPushRelabel.this.relabel[i]);
+			}
+		}
+	}
+}
@@ -0,0 +1,592 @@
+package image.segmentation;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/*
+ * the four cost layers of an input file, in row-major primitive arrays
+ * source and sink hold one capacity per pixel, horizontal rows * (cols - 1) capacities (a pixel and the one on its right)
+ * and vertical (rows - 1) * cols capacities (a pixel and the one below)
+ * read scans the bytes of the file through a channel and decodes the numbers where they are, no String or Integer is made per value
+ * an image is turned into layers by a CostFunction, one row of pixels at a time
+ * the binary format (see write) is memory-mapped and copied into the layers in bulk, nothing is parsed
+ * the content of a file already in memory is read the same way from its bytes
+ * binary layout, little-endian: "GCUT", version, rows, cols and width (bytes per capacity: 1, 2 or 4) as 4 byte integers,
+ * then the source, sink, horizontal and vertical layers, unsigned integers of width bytes each
+ */
+public class PixelCosts
+{
+	private static final int BUFFER = 1 << 16;
+	
+	private static final int MAGIC = 'G' | 'C' << 8 | 'U' << 16 | 'T' << 24;
+	private static final int VERSION = 1;
+	private static final int HEADER = 20;
+	// capacities mapped at a time, a single mapping can not be larger than 2GB
+	private static final int CHUNK = 1 << 26;
+	
+	public final int rows, cols;
+	public final int[] source, sink, horizontal, vertical;
+	
+	public PixelCosts(int rows, int cols)
+	{
+		if( rows < 0 || cols < 0 )
+		{
+			throw new IllegalArgumentException("grid dimensions can not be negative");
+		}
+		
+		if( (long) rows * cols > Integer.MAX_VALUE )
+		{
+			throw new IllegalArgumentException("a " + rows + "x" + cols + " grid has more pixels than an array can hold");
+		}
+		
+		this.rows = rows;
+		this.cols = cols;
+		this.source = new int[rows * cols];
+		this.sink = new int[rows * cols];
+		this.horizontal = new int[rows * Math.max(0, cols - 1)];
+		this.vertical = new int[Math.max(0, rows - 1) * cols];
+	}
+	
+	/*
+	 * the file is either in the binary format or a text file holding the dimensions "rows cols"
+	 * followed by the source, sink, horizontal and vertical layers
+	 * the text layers are read by count, so the blank lines between them and the line breaks are only separators
+	 */
+	public static PixelCosts read(File file) throws IOException
+	{
+		FileInputStream in = new FileInputStream(file);
+		
+		try
+		{
+			FileChannel channel = in.getChannel();
+			
+			if( channel.size() >= HEADER && channel.map(FileChannel.MapMode.READ_ONLY, 0, 4).order(ByteOrder.LITTLE_ENDIAN).getInt(0) == MAGIC )
+			{
+				return map(file, channel);
+			}
+			
+			return parse(file.toString(), channel, channel.size());
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+	
+	/*
+	 * same as read(File) for the content of a file received in memory
+	 */
+	public static PixelCosts read(byte[] data) throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+		
+		if( data.length < HEADER || buffer.getInt(0) != MAGIC )
+		{
+			return parse("input", Channels.newChannel(new ByteArrayInputStream(data)), data.length);
+		}
+		
+		PixelCosts costs = create("input", buffer, data.length);
+		int width = buffer.getInt(16);
+		int position = HEADER;
+		
+		for( int[] layer : new int[][] { costs.source, costs.sink, costs.horizontal, costs.vertical } )
+		{
+			buffer.position(position);
+			decode(buffer.slice().order(ByteOrder.LITTLE_ENDIAN), width, layer, 0, layer.length);
+			position += width * layer.length;
+		}
+		
+		return costs;
+	}
+	
+	/*
+	 * every value takes a digit and a separator at least, so the dimensions are checked against the size of the input
+	 * before the layers are allocated
+	 */
+	private static PixelCosts parse(String name, ReadableByteChannel channel, long available) throws IOException
+	{
+		Scanner s = new Scanner(channel);
+		int rows = s.next(), cols = s.next();
+		long size = 2 * values(name, rows, cols) - 1;
+		
+		if( available < size )
+		{
+			throw new IOException(name + " is truncated, " + rows + "x" + cols + " pixels need " + size + " bytes at least and " + available + " were found");
+		}
+		
+		PixelCosts costs = new PixelCosts(rows, cols);
+		
+		s.fill(costs.source);
+		s.fill(costs.sink);
+		s.fill(costs.horizontal);
+		s.fill(costs.vertical);
+		
+		return costs;
+	}
+	
+	/*
+	 * layers of an image, gray or rgb, the gray level of a color pixel is its luma
+	 */
+	public static PixelCosts read(BufferedImage image, CostFunction f)
+	{
+		int rows = image.getHeight(), cols = image.getWidth();
+		PixelCosts costs = new PixelCosts(rows, cols);
+		int[] above = new int[cols], row = new int[cols];
+		
+		for( int r = 0; r < rows; ++r )
+		{
+			image.getRGB(0, r, cols, 1, row, 0, cols);
+			
+			for( int c = 0; c < cols; ++c )
+			{
+				int rgb = row[c];
+				int gray = ( 299 * ( ( rgb >> 16 ) & 0xff ) + 587 * ( ( rgb >> 8 ) & 0xff ) + 114 * ( rgb & 0xff ) + 500 ) / 1000;
+				int p = r * cols + c;
+				
+				row[c] = gray;
+				costs.source[p] = f.source(gray);
+				costs.sink[p] = f.sink(gray);
+				
+				if( c > 0 )
+				{
+					costs.horizontal[r * ( cols - 1 ) + c - 1] = f.penalty(row[c - 1], gray);
+				}
+				
+				if( r > 0 )
+				{
+					costs.vertical[p - cols] = f.penalty(above[c], gray);
+				}
+			}
+			
+			int[] swap = above;
+			above = row;
+			row = swap;
+		}
+		
+		return costs;
+	}
+	
+	private static PixelCosts map(File file, FileChannel channel) throws IOException
+	{
+		ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER).order(ByteOrder.LITTLE_ENDIAN);
+		PixelCosts costs = create(file.toString(), header, channel.size());
+		int width = header.getInt(16);
+		long position = HEADER;
+		
+		position = costs.copy(channel, position, width, costs.source);
+		position = costs.copy(channel, position, width, costs.sink);
+		position = costs.copy(channel, position, width, costs.horizontal);
+		costs.copy(channel, position, width, costs.vertical);
+		
+		return costs;
+	}
+	
+	/*
+	 * empty layers of the dimensions of a binary header, after checking it against the size of the input
+	 */
+	private static PixelCosts create(String name, ByteBuffer header, long available) throws IOException
+	{
+		int version = header.getInt(4);
+		int rows = header.getInt(8), cols = header.getInt(12), width = header.getInt(16);
+		
+		if( version != VERSION )
+		{
+			throw new IOException(name + " has binary format version " + version + ", only version " + VERSION + " can be read");
+		}
+		
+		if( width != 1 && width != 2 && width != 4 )
+		{
+			throw new IOException(name + " has capacities of " + width + " bytes, expected 1, 2 or 4");
+		}
+		
+		long size = HEADER + width * values(name, rows, cols);
+		
+		if( available < size )
+		{
+			throw new IOException(name + " is truncated, " + size + " bytes expected and " + available + " found");
+		}
+		
+		return new PixelCosts(rows, cols);
+	}
+	
+	/*
+	 * number of capacities of a rows x cols input, once its dimensions are known to fit the arrays
+	 * the dimensions come from the input, they are checked before anything of their size is allocated
+	 */
+	private static long values(String name, int rows, int cols) throws IOException
+	{
+		if( rows < 1 || cols < 1 )
+		{
+			throw new IOException(name + " has dimensions " + rows + "x" + cols + ", both must be at least 1");
+		}
+		
+		if( (long) rows * cols > Integer.MAX_VALUE )
+		{
+			throw new IOException(name + " has " + (long) rows * cols + " pixels, more than an array can hold");
+		}
+		
+		return 2L * rows * cols + (long) rows * ( cols - 1 ) + (long) ( rows - 1 ) * cols;
+	}
+	
+	/*
+	 * copy a layer from the file into its array, returns the position after it
+	 */
+	private long copy(FileChannel channel, long position, int width, int[] layer) throws IOException
+	{
+		for( int start = 0; start < layer.length; start += CHUNK )
+		{
+			int count = Math.min(CHUNK, layer.length - start);
+			MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, position, (long) width * count);
+			
+			map.order(ByteOrder.LITTLE_ENDIAN);
+			decode(map, width, layer, start, count);
+			position += (long) width * count;
+		}
+		
+		return position;
+	}
+	
+	/*
+	 * count capacities of width bytes from the start of buffer into layer
+	 */
+	private static void decode(ByteBuffer buffer, int width, int[] layer, int start, int count)
+	{
+		if( width == 4 )
+		{
+			buffer.asIntBuffer().get(layer, start, count);
+		}
+		else if( width == 2 )
+		{
+			for( int i = 0; i < count; ++i )
+			{
+				layer[start + i] = buffer.getShort(2 * i) & 0xffff;
+			}
+		}
+		else
+		{
+			for( int i = 0; i < count; ++i )
+			{
+				layer[start + i] = buffer.get(i) & 0xff;
+			}
+		}
+	}
+	
+	/*
+	 * smallest number of bytes holding every capacity
+	 */
+	public int width()
+	{
+		int max = 0;
+		
+		for( int[] layer : new int[][] { this.source, this.sink, this.horizontal, this.vertical } )
+		{
+			for( int c : layer )
+			{
+				max = Math.max(max, c);
+			}
+		}
+		
+		return max <= 0xff ? 1 : max <= 0xffff ? 2 : 4;
+	}
+	
+	/*
+	 * write the layers in the binary format with the smallest width
+	 */
+	public void write(File file) throws IOException
+	{
+		this.write(file, this.width());
+	}
+	
+	public void write(File file, int width) throws IOException
+	{
+		if( width != 1 && width != 2 && width != 4 )
+		{
+			throw new IllegalArgumentException("capacities are 1, 2 or 4 bytes wide, not " + width);
+		}
+		
+		FileOutputStream out = new FileOutputStream(file);
+		
+		try
+		{
+			FileChannel channel = out.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+			
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(this.rows).putInt(this.cols).putInt(width);
+			
+			for( int[] layer : new int[][] { this.source, this.sink, this.horizontal, this.vertical } )
+			{
+				for( int c : layer )
+				{
+					if( width < 4 && c >>> ( 8 * width ) != 0 )
+					{
+						throw new IllegalArgumentException("capacity " + c + " does not fit in " + width + " bytes");
+					}
+					
+					if( buffer.remaining() < width )
+					{
+						drain(channel, buffer);
+					}
+					
+					if( width == 4 )
+					{
+						buffer.putInt(c);
+					}
+					else if( width == 2 )
+					{
+						buffer.putShort((short) c);
+					}
+					else
+					{
+						buffer.put((byte) c);
+					}
+				}
+			}
+			
+			drain(channel, buffer);
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+	
+	/*
+	 * write the layers in the text format: "rows cols", then every layer after a blank line, one row of the layer per line
+	 * the numbers are written digit by digit into the buffer, no String is made per value
+	 */
+	public void writeText(File file) throws IOException
+	{
+		FileOutputStream out = new FileOutputStream(file);
+		
+		try
+		{
+			FileChannel channel = out.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER);
+			
+			buffer.put(( this.rows + " " + this.cols + "\n" ).getBytes("US-ASCII"));
+			
+			int[][] layers = new int[][] { this.source, this.sink, this.horizontal, this.vertical };
+			int[] widths = new int[] { this.cols, this.cols, this.cols - 1, this.cols };
+			
+			for( int l = 0; l < layers.length; ++l )
+			{
+				buffer.put((byte) '\n');
+				
+				for( int i = 0; i < layers[l].length; ++i )
+				{
+					// 10 digits and a separator at most
+					if( buffer.remaining() < 11 )
+					{
+						drain(channel, buffer);
+					}
+					
+					putNumber(buffer, layers[l][i]);
+					buffer.put((byte) ( ( i + 1 ) % widths[l] == 0 ? '\n' : ' ' ));
+				}
+			}
+			
+			drain(channel, buffer);
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+	
+	private static void putNumber(ByteBuffer buffer, int c)
+	{
+		if( c < 0 )
+		{
+			throw new IllegalArgumentException("capacity " + c + " is negative");
+		}
+		
+		int digits = 1;
+		
+		for( int v = c; v >= 10; v /= 10 )
+		{
+			digits++;
+		}
+		
+		int end = buffer.position() + digits;
+		
+		for( int i = end - 1; i >= buffer.position(); --i )
+		{
+			buffer.put(i, (byte) ( '0' + c % 10 ));
+			c /= 10;
+		}
+		
+		buffer.position(end);
+	}
+	
+	private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException
+	{
+		buffer.flip();
+		
+		while( buffer.hasRemaining() )
+		{
+			channel.write(buffer);
+		}
+		
+		buffer.clear();
+	}
+	
+	/*
+	 * add the edges to an empty graph, a pixel grid or a csr graph takes the layers directly instead of edge by edge
+	 */
+	public Graph fill(Graph g)
+	{
+		if( g instanceof GridGraph )
+		{
+			return ( (GridGraph) g ).load(this);
+		}
+		
+		if( g instanceof CSRGraph )
+		{
+			return ( (CSRGraph) g ).load(this);
+		}
+		
+		int n = this.rows * this.cols;
+		int sinkNode = n + 2;
+		
+		// source = 1 and sink = n + 2, pixel p is node p + 2
+		for( int p = 0; p < n; ++p )
+		{
+			g.addEdge(1, p + 2, this.source[p]);
+		}
+		
+		for( int p = 0; p < n; ++p )
+		{
+			g.addEdge(p + 2, sinkNode, this.sink[p]);
+		}
+		
+		for( int r = 0, i = 0; r < this.rows; ++r )
+		{
+			for( int c = 0; c + 1 < this.cols; ++c, ++i )
+			{
+				int cur = r * this.cols + c + 2;
+				
+				g.addEdge(cur, cur + 1, this.horizontal[i]);
+				g.addEdge(cur + 1, cur, this.horizontal[i]);
+			}
+		}
+		
+		for( int i = 0; i < this.vertical.length; ++i )
+		{
+			int cur = i + 2;
+			
+			g.addEdge(cur, cur + this.cols, this.vertical[i]);
+			g.addEdge(cur + this.cols, cur, this.vertical[i]);
+		}
+		
+		return g;
+	}
+	
+	/*
+	 * non-negative decimal numbers separated by white space, read a buffer at a time
+	 */
+	private static class Scanner
+	{
+		private ReadableByteChannel channel;
+		private ByteBuffer buffer;
+		private byte[] bytes;
+		private int pos, limit;
+		private long offset;
+		
+		Scanner(ReadableByteChannel channel)
+		{
+			this.channel = channel;
+			this.buffer = ByteBuffer.allocate(BUFFER);
+			this.bytes = this.buffer.array();
+			this.pos = 0;
+			this.limit = 0;
+			this.offset = 0;
+		}
+		
+		/*
+		 * next byte, -1 at the end of the file
+		 */
+		private int read() throws IOException
+		{
+			if( this.pos == this.limit )
+			{
+				this.offset += this.limit;
+				this.buffer.clear();
+				
+				int count;
+				do
+				{
+					count = this.channel.read(this.buffer);
+				} while( count == 0 );
+				
+				if( count < 0 )
+				{
+					return -1;
+				}
+				
+				this.pos = 0;
+				this.limit = count;
+			}
+			
+			return this.bytes[this.pos++] & 0xff;
+		}
+		
+		int next() throws IOException
+		{
+			int b;
+			
+			do
+			{
+				b = this.read();
+			} while( b == ' ' || b == '\n' || b == '\r' || b == '\t' );
+			
+			if( b == -1 )
+			{
+				throw new IOException("unexpected end of file, a layer is missing values");
+			}
+			
+			if( b < '0' || b > '9' )
+			{
+				throw new IOException("unexpected character '" + (char) b + "' at byte " + ( this.offset + this.pos - 1 ));
+			}
+			
+			long value = 0;
+			
+			while( b >= '0' && b <= '9' )
+			{
+				value = 10 * value + ( b - '0' );
+				
+				if( value > Integer.MAX_VALUE )
+				{
+					throw new IOException("capacity too large at byte " + ( this.offset + this.pos - 1 ));
+				}
+				
+				b = this.read();
+			}
+			
+			if( b != -1 && b != ' ' && b != '\n' && b != '\r' && b != '\t' )
+			{
+				throw new IOException("unexpected character '" + (char) b + "' at byte " + ( this.offset + this.pos - 1 ));
+			}
+			
+			return (int) value;
+		}
+		
+		void fill(int[] layer) throws IOException
+		{
+			for( int i = 0; i < layer.length; ++i )
+			{
+				layer[i] = this.next();
+			}
+		}
+	}
+}
@@ -0,0 +1,265 @@
+package image.segmentation;
+
+import java.util.BitSet;
+
+/*
+ * pixels whose label is known before any search, removed from the graph given to the solver
+ * first the flow a pixel can send straight from the source to the sink is pushed, min(source, sink), so every pixel keeps one terminal edge at most
+ * then a pixel whose remaining source capacity is larger than the sum of its penalties is on the source side of every minimum cut
+ * (moving it to the sink side would cost more than all its neighbor edges), and the same for the sink
+ * such a pixel is removed: the penalties towards its free neighbors are added to their terminal edges, which can decide them in turn
+ * the minimum cuts of the remaining graph are the ones of the whole graph, so the cut found is the same as without the reduction
+ */
+public class PixelReduction
+{
+	private PixelCosts costs;
+	
+	// remaining terminal capacities and the sum of the penalties towards free neighbors
+	private int[] source, sink, degree;
+	// node of every free pixel in the reduced graph, 0 for the decided pixels
+	private int[] node;
+	private LabelMap labels;
+	private int free;
+	// edges of the last reduced graph
+	private int edges;
+	
+	// flow pushed straight through the terminal edges
+	private long constant;
+	
+	public PixelReduction(PixelCosts costs)
+	{
+		int n = costs.rows * costs.cols;
+		
+		this.costs = costs;
+		this.source = costs.source.clone();
+		this.sink = costs.sink.clone();
+		this.degree = new int[n];
+		this.node = new int[n];
+		this.labels = new LabelMap(costs.rows, costs.cols);
+		
+		// every pixel is in the queue once at most, so a ring of n entries holds it
+		int[] work = new int[n];
+		int head = 0, count = 0;
+		boolean[] queued = new boolean[n];
+		// 0 for a free pixel, 1 for the source side, 2 for the sink side
+		byte[] side = new byte[n];
+		
+		for( int p = 0; p < n; ++p )
+		{
+			this.push(p);
+			
+			for( int d = 0; d < 4; ++d )
+			{
+				this.degree[p] += Math.max(0, this.penalty(p, d));
+			}
+			
+			work[count++] = p;
+			queued[p] = true;
+		}
+		
+		while( count > 0 )
+		{
+			int p = work[head];
+			
+			head = ( head + 1 ) % n;
+			count--;
+			queued[p] = false;
+			
+			if( this.source[p] > this.degree[p] )
+			{
+				side[p] = 1;
+			}
+			else if( this.sink[p] > this.degree[p] )
+			{
+				side[p] = 2;
+			}
+			else
+			{
+				continue;
+			}
+			
+			this.labels.setBackground(p, side[p] == 1);
+			
+			for( int d = 0; d < 4; ++d )
+			{
+				int c = this.penalty(p, d);
+				
+				if( c < 0 )
+				{
+					continue;
+				}
+				
+				int q = this.neighbor(p, d);
+				
+				// the penalty towards a pixel decided earlier is already in the terminal edges of p
+				if( side[q] != 0 )
+				{
+					continue;
+				}
+				
+				// the edges between p and q become a terminal edge of q
+				this.degree[q] -= c;
+				
+				if( side[p] == 1 )
+				{
+					this.source[q] += c;
+				}
+				else
+				{
+					this.sink[q] += c;
+				}
+				
+				this.push(q);
+				
+				if( !queued[q] )
+				{
+					work[( head + count ) % n] = q;
+					count++;
+					queued[q] = true;
+				}
+			}
+		}
+		
+		for( int p = 0; p < n; ++p )
+		{
+			if( side[p] == 0 )
+			{
+				this.node[p] = this.free + 2;
+				this.free++;
+			}
+		}
+	}
+	
+	/*
+	 * csr graph of the free pixels, source = 1 and sink = free + 2, like the bands of BandedCut it is solved by the solver of the options
+	 * a terminal edge is only added if it has capacity left
+	 */
+	public Graph graph()
+	{
+		int sinkNode = this.free + 2;
+		Graph g = new CSRGraph(sinkNode);
+		int n = this.node.length;
+		
+		this.edges = 0;
+		
+		for( int p = 0; p < n; ++p )
+		{
+			if( this.node[p] != 0 && this.source[p] > 0 )
+			{
+				g.addEdge(1, this.node[p], this.source[p]);
+				this.edges++;
+			}
+		}
+		
+		for( int p = 0; p < n; ++p )
+		{
+			if( this.node[p] != 0 && this.sink[p] > 0 )
+			{
+				g.addEdge(this.node[p], sinkNode, this.sink[p]);
+				this.edges++;
+			}
+		}
+		
+		for( int p = 0; p < n; ++p )
+		{
+			for( int d = 0; d < 4; d += 2 )
+			{
+				int c = this.penalty(p, d);
+				
+				if( c < 0 || this.node[p] == 0 || this.node[this.neighbor(p, d)] == 0 )
+				{
+					continue;
+				}
+				
+				int q = this.neighbor(p, d);
+				
+				g.addEdge(this.node[p], this.node[q], c);
+				g.addEdge(this.node[q], this.node[p], c);
+				this.edges += 2;
+			}
+		}
+		
+		return g;
+	}
+	
+	/*
+	 * labels of all the pixels given the source side of a cut of the reduced graph
+	 */
+	public LabelMap labels(BitSet sourceSide)
+	{
+		LabelMap labels = new LabelMap(this.costs.rows, this.costs.cols);
+		
+		for( int p = 0; p < this.node.length; ++p )
+		{
+			labels.setBackground(p, this.node[p] == 0 ? this.labels.isBackground(p) : sourceSide.get(this.node[p]));
+		}
+		
+		return labels;
+	}
+	
+	/*
+	 * added to the max flow of the reduced graph to get the one of the whole graph
+	 */
+	public long constant()
+	{
+		return this.constant;
+	}
+	
+	public int removedNodes()
+	{
+		return this.node.length - this.free;
+	}
+	
+	/*
+	 * edges of the whole graph (as built by PixelCosts.fill) that are not in the last reduced graph
+	 */
+	public int removedEdges()
+	{
+		return 2 * this.node.length + 2 * ( this.costs.horizontal.length + this.costs.vertical.length ) - this.edges;
+	}
+	
+	public String report()
+	{
+		int nodes = this.node.length + 2, edges = 2 * this.node.length + 2 * ( this.costs.horizontal.length + this.costs.vertical.length );
+		
+		return String.format("reduction: %d of %d nodes and %d of %d edges removed, %d pushed through the terminal edges", this.removedNodes(), nodes, this.removedEdges(), edges, this.constant);
+	}
+	
+	/*
+	 * send min(source, sink) of pixel p straight through it
+	 */
+	private void push(int p)
+	{
+		int m = Math.min(this.source[p], this.sink[p]);
+		
+		this.source[p] -= m;
+		this.sink[p] -= m;
+		this.constant += m;
+	}
+	
+	/*
+	 * penalty between pixel p and its neighbor in direction d (right, left, down, up), -1 at the border of the image
+	 */
+	private int penalty(int p, int d)
+	{
+		int cols = this.costs.cols;
+		int r = p / cols, c = p % cols;
+		
+		switch( d )
+		{
+			case 0:
+				return c + 1 < cols ? this.costs.horizontal[r * ( cols - 1 ) + c] : -1;
+			case 1:
+				return c > 0 ? this.costs.horizontal[r * ( cols - 1 ) + c - 1] : -1;
+			case 2:
+				return r + 1 < this.costs.rows ? this.costs.vertical[p] : -1;
+			default:
+				return r > 0 ? this.costs.vertical[p - cols] : -1;
+		}
+	}
+	
+	private int neighbor(int p, int d)
+	{
+		return d == 0 ? p + 1 : d == 1 ? p - 1 : d == 2 ? p + this.costs.cols : p - this.costs.cols;
+	}
+}
@@ -0,0 +1,34 @@
+package image.segmentation;
+
+/*
+ * contrast-sensitive Potts model: the data term of ThresholdCosts, but separating two neighbors costs
+ * lambda * exp(-(a - b)^2 / (2 sigma^2)), so the cut prefers to follow the edges of the image
+ * the penalties only depend on the difference of the gray levels, they are computed once for all 256 of them
+ */
+public class PottsCosts extends ThresholdCosts
+{
+	private int[] penalties;
+	
+	public PottsCosts(int threshold, int lambda, double sigma)
+	{
+		super(threshold, lambda);
+		
+		if( sigma <= 0 )
+		{
+			throw new IllegalArgumentException("sigma must be positive");
+		}
+		
+		this.penalties = new int[256];
+		
+		for( int d = 0; d < this.penalties.length; ++d )
+		{
+			this.penalties[d] = (int) Math.round(lambda * Math.exp(-(double) d * d / ( 2 * sigma * sigma )));
+		}
+	}
+	
+	@Override
+	public int penalty(int gray, int neighbor)
+	{
+		return this.penalties[Math.abs(gray - neighbor)];
+	}
+}
@@ -0,0 +1,335 @@
+package image.segmentation;
+
+import java.util.Arrays;
+
+/*
+ * highest label push-relabel max flow
+ * labels of nodes that can still reach the sink stay below n, nodes above n send their excess back to the source,
+ * so the result is a proper flow and the residual network gives the minimum cut
+ * global relabeling recomputes exact distances every once in a while, the gap heuristic lifts
+ * every node above an empty label straight to n + 1
+ */
+public class PushRelabel implements FlowSolver
+{
+	// global relabel once the work done since the last one exceeds ALPHA * n + arcs
+	private static final int ALPHA = 6, RELABEL_WORK = 12;
+	
+	private ResidualNetwork network;
+	private int n, source, sink;
+	
+	private int[] label;
+	private int[] excess;
+	// next arc to look at for each node
+	private int[] current;
+	
+	// active nodes by label, singly linked
+	private int[] activeFirst, activeNext;
+	private int maxActive;
+	
+	// all nodes by label, doubly linked, used by the gap heuristic
+	private int[] bucketFirst, bucketNext, bucketPrev;
+	
+	private int[] queue;
+	private long work, threshold;
+	
+	private SolverMetrics metrics;
+	private long pushes, relabels;
+	
+	public PushRelabel()
+	{
+		this(SolverMetrics.NONE);
+	}
+	
+	public PushRelabel(SolverMetrics metrics)
+	{
+		this.metrics = metrics;
+	}
+	
+	@Override
+	public int maxflow(ResidualNetwork network, int source, int sink)
+	{
+		this.network = network;
+		this.n = network.nodeCount();
+		this.source = source;
+		this.sink = sink;
+		
+		int n = this.n;
+		
+		this.label = new int[n];
+		this.excess = new int[n];
+		this.current = new int[n];
+		this.activeFirst = new int[2 * n + 1];
+		this.activeNext = new int[n];
+		this.bucketFirst = new int[2 * n + 1];
+		this.bucketNext = new int[n];
+		this.bucketPrev = new int[n];
+		this.queue = new int[n];
+		
+		long arcs = 0;
+		for( int u = 0; u < n; ++u )
+		{
+			arcs += network.endArc(u) - network.firstArc(u);
+		}
+		this.threshold = ALPHA * (long) n + arcs;
+		this.work = 0;
+		this.pushes = this.relabels = 0;
+		
+		// saturate everything leaving the source
+		for( int a = network.firstArc(source), end = network.endArc(source); a < end; ++a )
+		{
+			int f = network.residual(a);
+			
+			if( f > 0 )
+			{
+				network.push(a, f);
+				this.excess[network.head(a)] += f;
+				this.excess[source] -= f;
+			}
+		}
+		
+		this.globalRelabel();
+		
+		while( this.maxActive >= 0 )
+		{
+			int u = this.activeFirst[this.maxActive];
+			
+			if( u == -1 )
+			{
+				this.maxActive--;
+				continue;
+			}
+			
+			this.activeFirst[this.maxActive] = this.activeNext[u];
+			
+			if( this.label[u] != this.maxActive )
+			{
+				// lifted by the gap heuristic while waiting
+				this.activate(u);
+				continue;
+			}
+			
+			this.discharge(u);
+			
+			if( this.work > this.threshold )
+			{
+				this.globalRelabel();
+			}
+		}
+		
+		this.metrics.pushRelabel(this.pushes, this.relabels);
+		
+		return this.excess[sink];
+	}
+	
+	private void discharge(int u)
+	{
+		ResidualNetwork net = this.network;
+		int end = net.endArc(u);
+		
+		while( this.excess[u] > 0 )
+		{
+			if( this.current[u] == end )
+			{
+				this.relabel(u);
+				
+				if( this.label[u] >= 2 * this.n )
+				{
+					break;
+				}
+				
+				continue;
+			}
+			
+			int a = this.current[u];
+			int v = net.head(a);
+			int r = net.residual(a);
+			
+			if( r > 0 && this.label[u] == this.label[v] + 1 )
+			{
+				int f = Math.min(this.excess[u], r);
+				
+				if( this.excess[v] == 0 && v != this.source && v != this.sink )
+				{
+					this.excess[v] = f;
+					this.activate(v);
+				}
+				else
+				{
+					this.excess[v] += f;
+				}
+				
+				net.push(a, f);
+				this.excess[u] -= f;
+				this.pushes++;
+				
+				if( this.excess[u] == 0 )
+				{
+					break;
+				}
+			}
+			
+			this.current[u]++;
+		}
+	}
+	
+	private void relabel(int u)
+	{
+		ResidualNetwork net = this.network;
+		int old = this.label[u];
+		int min = 2 * this.n;
+		
+		for( int a = net.firstArc(u), end = net.endArc(u); a < end; ++a )
+		{
+			if( net.residual(a) > 0 )
+			{
+				min = Math.min(min, this.label[net.head(a)] + 1);
+			}
+		}
+		
+		this.work += net.endArc(u) - net.firstArc(u) + RELABEL_WORK;
+		this.relabels++;
+		this.current[u] = net.firstArc(u);
+		this.unlink(u);
+		
+		if( old < this.n && this.bucketFirst[old] == -1 )
+		{
+			// nothing left at label old, whatever sits above it can not reach the sink any more
+			this.gap(old);
+			min = Math.max(min, this.n + 1);
+		}
+		
+		this.label[u] = Math.min(min, 2 * this.n);
+		this.link(u);
+	}
+	
+	private void gap(int k)
+	{
+		for( int l = k + 1; l < this.n; ++l )
+		{
+			int u;
+			
+			while( ( u = this.bucketFirst[l] ) != -1 )
+			{
+				this.unlink(u);
+				this.label[u] = this.n + 1;
+				this.current[u] = this.network.firstArc(u);
+				this.link(u);
+			}
+		}
+	}
+	
+	/*
+	 * exact distances to the sink, or to the source plus n for nodes cut off from the sink
+	 */
+	private void globalRelabel()
+	{
+		ResidualNetwork net = this.network;
+		int n = this.n;
+		
+		Arrays.fill(this.label, 2 * n);
+		Arrays.fill(this.activeFirst, -1);
+		Arrays.fill(this.bucketFirst, -1);
+		
+		this.label[this.sink] = 0;
+		this.label[this.source] = n;
+		this.metrics.search(this.bfs(this.sink) + this.bfs(this.source));
+		
+		this.maxActive = -1;
+		
+		for( int u = 0; u < n; ++u )
+		{
+			this.current[u] = net.firstArc(u);
+			
+			if( u == this.source || u == this.sink || this.label[u] >= 2 * n )
+			{
+				continue;
+			}
+			
+			this.link(u);
+			
+			if( this.excess[u] > 0 )
+			{
+				this.activate(u);
+			}
+		}
+		
+		this.work = 0;
+	}
+	
+	/*
+	 * reverse bfs from root over arcs with residual capacity towards the visited node, returns the number of nodes visited
+	 */
+	private int bfs(int root)
+	{
+		ResidualNetwork net = this.network;
+		int head = 0, tail = 0;
+		
+		this.queue[tail++] = root;
+		
+		while( head < tail )
+		{
+			int v = this.queue[head++];
+			
+			for( int a = net.firstArc(v), end = net.endArc(v); a < end; ++a )
+			{
+				int u = net.head(a);
+				
+				if( this.label[u] == 2 * this.n && net.residual(net.twin(a)) > 0 )
+				{
+					this.label[u] = this.label[v] + 1;
+					this.queue[tail++] = u;
+				}
+			}
+		}
+		
+		return tail;
+	}
+	
+	private void activate(int u)
+	{
+		int l = this.label[u];
+		
+		this.activeNext[u] = this.activeFirst[l];
+		this.activeFirst[l] = u;
+		
+		if( l > this.maxActive )
+		{
+			this.maxActive = l;
+		}
+	}
+	
+	private void link(int u)
+	{
+		int l = this.label[u];
+		int first = this.bucketFirst[l];
+		
+		this.bucketPrev[u] = -1;
+		this.bucketNext[u] = first;
+		
+		if( first != -1 )
+		{
+			this.bucketPrev[first] = u;
+		}
+		
+		this.bucketFirst[l] = u;
+	}
+	
+	private void unlink(int u)
+	{
+		int prev = this.bucketPrev[u], next = this.bucketNext[u];
+		
+		if( prev != -1 )
+		{
+			this.bucketNext[prev] = next;
+		}
+		else
+		{
+			this.bucketFirst[this.label[u]] = next;
+		}
+		
+		if( next != -1 )
+		{
+			this.bucketPrev[next] = prev;
+		}
+	}
+}
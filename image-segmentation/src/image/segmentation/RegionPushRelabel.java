@@ -0,0 +1,687 @@
+package image.segmentation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * push-relabel on a TiledGrid, one tile at a time
+ * a tile is discharged with the labels of the pixels around it frozen: its excess goes to the sink, back to the source
+ * or over the border into the neighboring tiles, where it waits in an inbox until that tile is loaded next
+ * every push and relabel is one the sequential algorithm could have done, so the result is the same max flow
+ * tiles are colored like a checkerboard and tiles of one color never touch, so they are discharged in parallel
+ * and a sweep over both colors is repeated until no tile has excess left
+ * before discharging, a tile relabels its pixels with their exact distance inside the tile to the sink,
+ * to the frozen neighbors or to the source, and once enough work has been done the exact distances over
+ * the whole grid are computed tile by tile, otherwise excess that has to go back to the source climbs
+ * only a couple of labels per sweep
+ */
+public class RegionPushRelabel
+{
+	private static final int RIGHT = 0, LEFT = 1, DOWN = 2, UP = 3, TO_SINK = 4, TO_SOURCE = 5;
+	private static final int ALPHA = 6;
+	
+	private int threads;
+	
+	private TiledGrid grid;
+	private int n;
+	
+	// flow waiting at the border of each tile, by tile, side (direction of the arc back to the sender) and position
+	private int[][][] inbox;
+	private boolean[] pending;
+	// labels of the border pixels of each tile, as seen by its neighbors
+	private int[][][] border;
+	
+	private long flow;
+	// work done by the discharges since the last global relabeling
+	private long work, threshold;
+	// tiles whose neighbors got new estimates during a global relabeling
+	private boolean[] dirty;
+	
+	public RegionPushRelabel()
+	{
+		this(Runtime.getRuntime().availableProcessors());
+	}
+	
+	public RegionPushRelabel(int threads)
+	{
+		if( threads < 1 )
+		{
+			throw new IllegalArgumentException("number of threads must be at least 1");
+		}
+		
+		this.threads = threads;
+	}
+	
+	/*
+	 * max flow from the source to the sink of the grid, computed in place
+	 */
+	public int maxflow(TiledGrid grid)
+	{
+		this.grid = grid;
+		this.n = grid.nodeCount();
+		
+		int count = grid.tileCount();
+		
+		this.inbox = new int[count][][];
+		this.border = new int[count][][];
+		this.pending = new boolean[count];
+		this.flow = 0;
+		this.work = 0;
+		this.threshold = ALPHA * (long) this.n;
+		
+		// saturate the arcs leaving the source
+		for( int t = 0; t < count; ++t )
+		{
+			TiledGrid.Tile x = grid.acquire(t);
+			int m = x.height * x.width;
+			
+			this.inbox[t] = new int[][] { new int[x.height], new int[x.height], new int[x.width], new int[x.width] };
+			this.border[t] = new int[][] { new int[x.height], new int[x.height], new int[x.width], new int[x.width] };
+			
+			for( int p = 0; p < m; ++p )
+			{
+				int f = x.residuals[TiledGrid.SLOTS * p + TiledGrid.FROM_SOURCE];
+				
+				x.residuals[TiledGrid.SLOTS * p + TiledGrid.FROM_SOURCE] = 0;
+				x.residuals[TiledGrid.SLOTS * p + TO_SOURCE] += f;
+				x.excess[p] += f;
+				x.label[p] = 0;
+				this.flow += f;
+			}
+			
+			this.pending[t] = true;
+			grid.release(t);
+		}
+		
+		ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+		
+		try
+		{
+			this.globalRelabel(pool);
+			
+			boolean busy = true;
+			
+			while( busy )
+			{
+				busy = false;
+				
+				for( int color = 0; color < 2; ++color )
+				{
+					List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+					
+					for( int t = 0; t < count; ++t )
+					{
+						if( this.pending[t] && this.color(t) == color )
+						{
+							tasks.add(new Discharge(t));
+						}
+					}
+					
+					busy |= !tasks.isEmpty();
+					this.invoke(pool, tasks);
+				}
+				
+				if( busy && this.work > this.threshold )
+				{
+					this.globalRelabel(pool);
+				}
+			}
+		}
+		catch( InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while solving tiles", e);
+		}
+		catch( ExecutionException e )
+		{
+			throw new IllegalStateException("could not solve a tile", e.getCause());
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+		
+		return FlowNetwork.checked(this.flow);
+	}
+	
+	private int color(int t)
+	{
+		return ( t / this.grid.tileCols() + t % this.grid.tileCols() ) % 2;
+	}
+	
+	private void invoke(ExecutorService pool, List<Callable<Void>> tasks) throws InterruptedException, ExecutionException
+	{
+		for( Future<Void> f : pool.invokeAll(tasks) )
+		{
+			f.get();
+		}
+	}
+	
+	private synchronized void collect(long returned, long work)
+	{
+		this.flow -= returned;
+		this.work += work;
+	}
+	
+	/*
+	 * exact distances to the sink, or to the source plus n, over the whole grid
+	 * every tile searches with the current estimates for the pixels around it and the tiles whose border
+	 * got closer search again, until nothing changes, then the labels are raised to the distances
+	 */
+	private void globalRelabel(ExecutorService pool) throws InterruptedException, ExecutionException
+	{
+		int count = this.grid.tileCount();
+		int[][][] estimate = new int[count][][];
+		boolean busy = true;
+		
+		this.dirty = new boolean[count];
+		
+		for( int t = 0; t < count; ++t )
+		{
+			estimate[t] = new int[4][];
+			
+			for( int d = RIGHT; d <= UP; ++d )
+			{
+				estimate[t][d] = new int[this.border[t][d].length];
+				Arrays.fill(estimate[t][d], 2 * this.n);
+			}
+			
+			this.dirty[t] = true;
+		}
+		
+		while( busy )
+		{
+			busy = false;
+			
+			for( int color = 0; color < 2; ++color )
+			{
+				List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+				
+				for( int t = 0; t < count; ++t )
+				{
+					if( this.dirty[t] && this.color(t) == color )
+					{
+						tasks.add(new Estimate(t, estimate, false));
+					}
+				}
+				
+				busy |= !tasks.isEmpty();
+				this.invoke(pool, tasks);
+			}
+		}
+		
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		
+		for( int t = 0; t < count; ++t )
+		{
+			tasks.add(new Estimate(t, estimate, true));
+		}
+		
+		this.invoke(pool, tasks);
+		this.work = 0;
+	}
+	
+	/*
+	 * take in the flow the neighbors pushed over the border of a tile
+	 */
+	private void receive(int t, TiledGrid.Tile x)
+	{
+		int[][] in = this.inbox[t];
+		
+		for( int d = RIGHT; d <= UP; ++d )
+		{
+			for( int k = 0; k < in[d].length; ++k )
+			{
+				if( in[d][k] != 0 )
+				{
+					int p = this.borderPixel(x, d, k);
+					
+					x.residuals[TiledGrid.SLOTS * p + d] += in[d][k];
+					x.excess[p] += in[d][k];
+					in[d][k] = 0;
+				}
+			}
+		}
+	}
+	
+	/*
+	 * publish the labels of the border pixels of a tile for its neighbors
+	 */
+	private void publish(int t, TiledGrid.Tile x)
+	{
+		for( int d = RIGHT; d <= UP; ++d )
+		{
+			for( int k = 0; k < this.border[t][d].length; ++k )
+			{
+				this.border[t][d][k] = x.label[this.borderPixel(x, d, k)];
+			}
+		}
+	}
+	
+	/*
+	 * k-th pixel on side d of a tile
+	 */
+	private int borderPixel(TiledGrid.Tile x, int d, int k)
+	{
+		switch( d )
+		{
+			case RIGHT:
+				return k * x.width + x.width - 1;
+			case LEFT:
+				return k * x.width;
+			case DOWN:
+				return ( x.height - 1 ) * x.width + k;
+			default:
+				return k;
+		}
+	}
+	
+	/*
+	 * position along the border of pixel p, which lies on side d
+	 */
+	private int position(TiledGrid.Tile x, int p, int d)
+	{
+		return d == RIGHT || d == LEFT ? p / x.width : p % x.width;
+	}
+	
+	private int[] neighbors(int t)
+	{
+		int[] nb = new int[4];
+		
+		for( int d = RIGHT; d <= UP; ++d )
+		{
+			nb[d] = this.grid.neighborTile(t, d);
+		}
+		
+		return nb;
+	}
+	
+	/*
+	 * label at the other end of the arc leaving p in direction d, outside holds the labels of the pixels around the tile
+	 * -1 if there is nothing there
+	 */
+	private int target(TiledGrid.Tile x, int[] nb, int[][][] outside, int p, int d)
+	{
+		if( d == TO_SINK )
+		{
+			return 0;
+		}
+		
+		if( d == TO_SOURCE )
+		{
+			return this.n;
+		}
+		
+		int q = this.grid.inside(x, p / x.width, p % x.width, d);
+		
+		if( q != -1 )
+		{
+			return x.label[q];
+		}
+		
+		if( nb[d] == -1 )
+		{
+			return -1;
+		}
+		
+		return outside[nb[d]][d ^ 1][this.position(x, p, d)];
+	}
+	
+	/*
+	 * distance of every pixel of a tile, breadth first search going backwards over the residual arcs
+	 * that starts from the sink, the source and the pixels around the tile with the labels in outside
+	 * pixels that reach none of them get 2n
+	 */
+	private void distances(TiledGrid.Tile x, int[] nb, int[][][] outside, int[] dist, int[] queue)
+	{
+		int n = this.n;
+		int m = x.height * x.width;
+		long[] seeds = new long[m];
+		int seedCount = 0;
+		
+		Arrays.fill(dist, 2 * n);
+		
+		for( int p = 0; p < m; ++p )
+		{
+			int min = 2 * n;
+			
+			for( int d = RIGHT; d <= TO_SOURCE; ++d )
+			{
+				if( x.residuals[TiledGrid.SLOTS * p + d] <= 0 )
+				{
+					continue;
+				}
+				
+				// neighbors inside the tile are reached by the search itself
+				if( d <= UP && this.grid.inside(x, p / x.width, p % x.width, d) != -1 )
+				{
+					continue;
+				}
+				
+				int l = this.target(x, nb, outside, p, d);
+				
+				if( l != -1 )
+				{
+					min = Math.min(min, l + 1);
+				}
+			}
+			
+			if( min < 2 * n )
+			{
+				seeds[seedCount++] = ( (long) min << 32 ) | p;
+			}
+		}
+		
+		Arrays.sort(seeds, 0, seedCount);
+		
+		// the queue holds nodes in order of distance, seeds are merged in as the distances get to them
+		int qh = 0, qt = 0, s = 0;
+		
+		while( qh < qt || s < seedCount )
+		{
+			int v;
+			
+			if( s < seedCount && ( qh == qt || ( seeds[s] >>> 32 ) <= dist[queue[qh]] ) )
+			{
+				int p = (int) seeds[s];
+				int l = (int) ( seeds[s++] >>> 32 );
+				
+				if( l >= dist[p] )
+				{
+					continue;
+				}
+				
+				dist[p] = l;
+				v = p;
+			}
+			else
+			{
+				v = queue[qh++];
+			}
+			
+			int i = v / x.width, j = v % x.width;
+			
+			for( int d = RIGHT; d <= UP; ++d )
+			{
+				int u = this.grid.inside(x, i, j, d);
+				
+				// u reaches v over the twin of the arc from v to u
+				if( u != -1 && dist[u] > dist[v] + 1 && x.residuals[TiledGrid.SLOTS * u + ( d ^ 1 )] > 0 )
+				{
+					dist[u] = dist[v] + 1;
+					queue[qt++] = u;
+				}
+			}
+		}
+	}
+	
+	/*
+	 * one tile of a global relabeling, either a search with the current estimates or,
+	 * once they are exact, the final search that raises the labels
+	 */
+	private class Estimate implements Callable<Void>
+	{
+		private int t;
+		private int[][][] estimate;
+		private boolean apply;
+		
+		public Estimate(int t, int[][][] estimate, boolean apply)
+		{
+			this.t = t;
+			this.estimate = estimate;
+			this.apply = apply;
+		}
+		
+		@Override
+		public Void call()
+		{
+			RegionPushRelabel outer = RegionPushRelabel.this;
+			TiledGrid.Tile x = outer.grid.acquire(this.t);
+			
+			try
+			{
+				int m = x.height * x.width;
+				int[] nb = outer.neighbors(this.t);
+				int[] dist = new int[m];
+				
+				outer.dirty[this.t] = false;
+				// the arcs back to the neighbors that pushed into the tile are part of the residual network
+				outer.receive(this.t, x);
+				outer.distances(x, nb, this.estimate, dist, new int[m]);
+				
+				if( this.apply )
+				{
+					for( int p = 0; p < m; ++p )
+					{
+						x.label[p] = Math.max(x.label[p], dist[p]);
+					}
+					
+					outer.publish(this.t, x);
+					return null;
+				}
+				
+				for( int d = RIGHT; d <= UP; ++d )
+				{
+					int[] mine = this.estimate[this.t][d];
+					
+					for( int k = 0; k < mine.length; ++k )
+					{
+						int p = outer.borderPixel(x, d, k);
+						
+						// no other tile of this color touches the neighbor, it can be marked
+						if( dist[p] < mine[k] )
+						{
+							mine[k] = dist[p];
+							
+							if( nb[d] != -1 )
+							{
+								outer.dirty[nb[d]] = true;
+							}
+						}
+					}
+				}
+			}
+			finally
+			{
+				outer.grid.release(this.t);
+			}
+			
+			return null;
+		}
+	}
+	
+	private class Discharge implements Callable<Void>
+	{
+		private int t;
+		
+		private TiledGrid.Tile x;
+		private int[] res, excess, label;
+		private int m;
+		// neighboring tile on each side, -1 at the border of the grid
+		private int[] nb;
+		
+		private int[] queue;
+		private boolean[] queued;
+		private int head, tail, active;
+		
+		// flow sent back to the source and work done
+		private long returned, done;
+		
+		public Discharge(int t)
+		{
+			this.t = t;
+		}
+		
+		@Override
+		public Void call()
+		{
+			TiledGrid grid = RegionPushRelabel.this.grid;
+			
+			this.x = grid.acquire(this.t);
+			
+			try
+			{
+				this.res = this.x.residuals;
+				this.excess = this.x.excess;
+				this.label = this.x.label;
+				this.m = this.x.height * this.x.width;
+				this.nb = RegionPushRelabel.this.neighbors(this.t);
+				
+				RegionPushRelabel.this.pending[this.t] = false;
+				RegionPushRelabel.this.receive(this.t, this.x);
+				this.run();
+				RegionPushRelabel.this.publish(this.t, this.x);
+			}
+			finally
+			{
+				grid.release(this.t);
+			}
+			
+			RegionPushRelabel.this.collect(this.returned, this.done);
+			
+			return null;
+		}
+		
+		private void run()
+		{
+			int n = RegionPushRelabel.this.n;
+			long threshold = ALPHA * (long) this.m + 6 * (long) this.m;
+			long work = 0;
+			
+			this.queue = new int[this.m];
+			this.queued = new boolean[this.m];
+			this.relabel();
+			
+			while( this.active > 0 )
+			{
+				int p = this.queue[this.head];
+				
+				this.head = ( this.head + 1 ) % this.m;
+				this.active--;
+				this.queued[p] = false;
+				
+				while( this.excess[p] > 0 && this.label[p] < 2 * n )
+				{
+					int min = 2 * n;
+					
+					for( int d = RIGHT; d <= TO_SOURCE && this.excess[p] > 0; ++d )
+					{
+						int a = TiledGrid.SLOTS * p + d;
+						
+						if( this.res[a] <= 0 )
+						{
+							continue;
+						}
+						
+						int l = RegionPushRelabel.this.target(this.x, this.nb, RegionPushRelabel.this.border, p, d);
+						
+						if( l == -1 )
+						{
+							continue;
+						}
+						
+						if( l == this.label[p] - 1 )
+						{
+							this.push(p, d, Math.min(this.excess[p], this.res[a]));
+						}
+						
+						if( this.res[a] > 0 )
+						{
+							min = Math.min(min, l + 1);
+						}
+					}
+					
+					if( this.excess[p] > 0 )
+					{
+						this.label[p] = min;
+						work += 6;
+						this.done += 6;
+					}
+				}
+				
+				if( work > threshold )
+				{
+					work = 0;
+					this.relabel();
+				}
+			}
+		}
+		
+		private void push(int p, int d, int f)
+		{
+			int a = TiledGrid.SLOTS * p + d;
+			
+			this.res[a] -= f;
+			this.excess[p] -= f;
+			
+			if( d == TO_SINK )
+			{
+				this.res[TiledGrid.SLOTS * p + TiledGrid.FROM_SINK] += f;
+				return;
+			}
+			
+			if( d == TO_SOURCE )
+			{
+				this.res[TiledGrid.SLOTS * p + TiledGrid.FROM_SOURCE] += f;
+				this.returned += f;
+				return;
+			}
+			
+			int q = RegionPushRelabel.this.grid.inside(this.x, p / this.x.width, p % this.x.width, d);
+			
+			if( q != -1 )
+			{
+				this.res[TiledGrid.SLOTS * q + ( d ^ 1 )] += f;
+				this.excess[q] += f;
+				this.activate(q);
+				return;
+			}
+			
+			// no other tile of this color touches the neighbor, its inbox is ours for now
+			int nb = this.nb[d];
+			
+			RegionPushRelabel.this.inbox[nb][d ^ 1][RegionPushRelabel.this.position(this.x, p, d)] += f;
+			RegionPushRelabel.this.pending[nb] = true;
+		}
+		
+		private void activate(int p)
+		{
+			if( !this.queued[p] && this.excess[p] > 0 && this.label[p] < 2 * RegionPushRelabel.this.n )
+			{
+				this.queued[p] = true;
+				this.queue[this.tail] = p;
+				this.tail = ( this.tail + 1 ) % this.m;
+				this.active++;
+			}
+		}
+		
+		/*
+		 * raise every label to the exact distance inside the tile, see distances
+		 * labels never go down, the larger of two valid labelings is valid as well
+		 */
+		private void relabel()
+		{
+			int[] dist = new int[this.m];
+			
+			RegionPushRelabel.this.distances(this.x, this.nb, RegionPushRelabel.this.border, dist, this.queue);
+			this.done += this.m;
+			
+			Arrays.fill(this.queued, false);
+			this.head = 0;
+			this.tail = 0;
+			this.active = 0;
+			
+			for( int p = 0; p < this.m; ++p )
+			{
+				this.label[p] = Math.max(this.label[p], dist[p]);
+				this.activate(p);
+			}
+		}
+	}
+}
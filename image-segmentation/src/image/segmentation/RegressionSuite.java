@@ -0,0 +1,360 @@
+/*
+ * Performance regression suite on generated inputs
+ * java -cp target/classes image.segmentation.RegressionSuite [--sizes=n,...] [--kinds=k,...] [--solvers=s,...] [--runs=n] [--baseline=file] [--record] [--tolerance=t] [options]
+ * every solver of --solvers (default ek,dinic,bk,pr) segments every kind of CostGenerator input (default all of them), square images
+ * of --sizes pixels a side (default 64,256,1024), with the other options of Application, the csr graph unless --graph is given
+ * a case is timed by the median of --runs=n segmentations (default 3) after one to warm up, and the peak heap use during them is kept
+ * the solvers must all find the same cut value on an input
+ * --record writes the measures to the baseline file (default regression-baseline.txt), otherwise every case is checked against it:
+ * slower or using more memory than its baseline by more than --tolerance (default 0.25 for 25%), or a different cut value, is a failure
+ * and the suite exits with status 1, as it does when the baseline file is missing or can not be read
+ * Edmonds-Karp only runs on sizes up to 128, it takes seconds to minutes a solve above
+*/
+
+package image.segmentation;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+public class RegressionSuite
+{
+	private static final int EK_SIZE = 128;
+	// allowed on top of the tolerance, timer and gc noise dominate the small cases
+	private static final double SLACK_MS = 5, SLACK_MB = 16;
+	
+	/*
+	 * one line of the baseline file
+	 */
+	private static class Measure
+	{
+		double time, peak;
+		long cut;
+		
+		Measure(double time, double peak, long cut)
+		{
+			this.time = time;
+			this.peak = peak;
+			this.cut = cut;
+		}
+	}
+	
+	public static void main(String[] args)
+	{
+		Application.Options options = new Application.Options();
+		String[] sizes = new String[] { "64", "256", "1024" };
+		String[] kinds = CostGenerator.KINDS;
+		String[] solvers = new String[] { "ek", "dinic", "bk", "pr" };
+		int runs = 3;
+		String baseline = "regression-baseline.txt";
+		boolean record = false;
+		double tolerance = 0.25;
+		
+		options.backend = "csr";
+		
+		try
+		{
+			for( int i = 0; i < args.length; ++i )
+			{
+				if( args[i].startsWith("--sizes=") )
+				{
+					sizes = args[i].substring("--sizes=".length()).split(",");
+				}
+				else if( args[i].startsWith("--kinds=") )
+				{
+					kinds = args[i].substring("--kinds=".length()).split(",");
+				}
+				else if( args[i].startsWith("--solvers=") )
+				{
+					solvers = args[i].substring("--solvers=".length()).split(",");
+					
+					// a misspelled solver is refused before anything runs
+					for( String solver : solvers )
+					{
+						options.parse("--solver=" + solver);
+					}
+				}
+				else if( args[i].startsWith("--runs=") )
+				{
+					runs = Integer.valueOf(args[i].substring("--runs=".length()));
+				}
+				else if( args[i].startsWith("--baseline=") )
+				{
+					baseline = args[i].substring("--baseline=".length());
+				}
+				else if( args[i].equals("--record") )
+				{
+					record = true;
+				}
+				else if( args[i].startsWith("--tolerance=") )
+				{
+					tolerance = Double.valueOf(args[i].substring("--tolerance=".length()));
+				}
+				else if( !options.parse(args[i]) )
+				{
+					System.out.println("Error: unknown option " + args[i]);
+					return;
+				}
+			}
+		}
+		catch( IllegalArgumentException e )
+		{
+			System.out.println("Error: " + e.getMessage());
+			return;
+		}
+		
+		Map<String, Measure> expected = new LinkedHashMap<String, Measure>();
+		Map<String, Measure> measured = new LinkedHashMap<String, Measure>();
+		
+		try
+		{
+			if( !record )
+			{
+				expected = readBaseline(new File(baseline));
+			}
+		}
+		catch( IOException e )
+		{
+			// without a baseline nothing can fail, a build running the suite would pass whatever the solvers do
+			System.out.println("Error: no baseline to check against, " + e.getMessage() + " (--record writes one)");
+			System.exit(1);
+		}
+		
+		int failures = 0;
+		
+		System.out.println(String.format("%-12s %6s %-6s %10s %10s %10s %10s %12s  %s", "kind", "size", "solver", "time (ms)", "budget", "peak (MB)", "budget", "cut", "result"));
+		
+		for( String kind : kinds )
+		{
+			for( String size : sizes )
+			{
+				int n = Integer.valueOf(size);
+				PixelCosts costs = CostGenerator.generate(kind, n, n, 1);
+				Long cut = null;
+				
+				for( String solver : solvers )
+				{
+					if( solver.equals("ek") && n > EK_SIZE )
+					{
+						continue;
+					}
+					
+					String key = kind + " " + size + " " + solver;
+					Measure m;
+					
+					options.solver = solver;
+					
+					try
+					{
+						m = measure(options, costs, runs);
+					}
+					catch( IOException e )
+					{
+						System.out.println(String.format("%-12s %6s %-6s Error: %s", kind, size, solver, e.getMessage()));
+						failures++;
+						continue;
+					}
+					
+					measured.put(key, m);
+					
+					String result = check(m, expected.get(key), tolerance);
+					Measure budget = expected.get(key);
+					
+					// every solver has to find the minimum cut, its value does not depend on the solver
+					if( cut != null && m.cut != cut )
+					{
+						result += ( result.equals("ok") ? "" : ", " ) + "cut differs from the other solvers";
+					}
+					
+					cut = m.cut;
+					
+					if( !result.equals("ok") && !result.equals("new") && !record )
+					{
+						failures++;
+					}
+					
+					System.out.println(String.format("%-12s %6s %-6s %10.1f %10s %10.1f %10s %12d  %s", kind, size, solver, m.time, budget == null ? "-" : String.format("%.1f", budget.time * ( 1 + tolerance ) + SLACK_MS),
+							m.peak, budget == null ? "-" : String.format("%.1f", budget.peak * ( 1 + tolerance ) + SLACK_MB), m.cut, result));
+				}
+			}
+		}
+		
+		if( record )
+		{
+			try
+			{
+				writeBaseline(new File(baseline), measured);
+				System.out.println(measured.size() + " cases recorded in " + baseline);
+			}
+			catch( IOException e )
+			{
+				System.out.println("Error: " + e.getMessage());
+			}
+			
+			return;
+		}
+		
+		System.out.println(measured.size() + " cases, " + failures + " failed");
+		
+		if( failures > 0 )
+		{
+			// a regression has to fail the build that runs the suite
+			System.exit(1);
+		}
+	}
+	
+	/*
+	 * median time and largest peak heap use of runs segmentations, after one to warm up
+	 */
+	private static Measure measure(Application.Options options, PixelCosts costs, int runs) throws IOException
+	{
+		LabelMap labels = options.segment(costs);
+		double[] times = new double[Math.max(1, runs)];
+		double peak = 0;
+		
+		for( int r = 0; r < times.length; ++r )
+		{
+			System.gc();
+			
+			for( MemoryPoolMXBean pool : heapPools() )
+			{
+				pool.resetPeakUsage();
+			}
+			
+			long startTime = System.nanoTime();
+			
+			labels = options.segment(costs);
+			times[r] = ( System.nanoTime() - startTime ) / 1e6;
+			
+			long used = 0;
+			
+			for( MemoryPoolMXBean pool : heapPools() )
+			{
+				used += pool.getPeakUsage().getUsed();
+			}
+			
+			peak = Math.max(peak, used / 1048576.0);
+		}
+		
+		Arrays.sort(times);
+		
+		return new Measure(times[times.length / 2], peak, BandedCut.energy(costs, labels));
+	}
+	
+	private static MemoryPoolMXBean[] heapPools()
+	{
+		List<MemoryPoolMXBean> heap = new ArrayList<MemoryPoolMXBean>();
+		
+		for( MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans() )
+		{
+			if( pool.getType() == MemoryType.HEAP && pool.isValid() )
+			{
+				heap.add(pool);
+			}
+		}
+		
+		return heap.toArray(new MemoryPoolMXBean[heap.size()]);
+	}
+	
+	/*
+	 * ok, new if the case is not in the baseline, or what went over its budget
+	 */
+	private static String check(Measure m, Measure budget, double tolerance)
+	{
+		if( budget == null )
+		{
+			return "new";
+		}
+		
+		StringBuilder failed = new StringBuilder();
+		
+		if( m.time > budget.time * ( 1 + tolerance ) + SLACK_MS )
+		{
+			failed.append(String.format("%.0f%% slower", 100 * ( m.time / budget.time - 1 )));
+		}
+		
+		if( m.peak > budget.peak * ( 1 + tolerance ) + SLACK_MB )
+		{
+			failed.append(failed.length() == 0 ? "" : ", ").append(String.format("%.0f%% more memory", 100 * ( m.peak / budget.peak - 1 )));
+		}
+		
+		if( m.cut != budget.cut )
+		{
+			failed.append(failed.length() == 0 ? "" : ", ").append("cut was " + budget.cut);
+		}
+		
+		return failed.length() == 0 ? "ok" : failed.toString();
+	}
+	
+	/*
+	 * "kind size solver time peak cut" per line, the lines starting with # are comments
+	 */
+	private static Map<String, Measure> readBaseline(File file) throws IOException
+	{
+		Map<String, Measure> baseline = new LinkedHashMap<String, Measure>();
+		BufferedReader br = new BufferedReader(new FileReader(file));
+		
+		try
+		{
+			String line;
+			
+			while( ( line = br.readLine() ) != null )
+			{
+				line = line.trim();
+				
+				if( line.isEmpty() || line.startsWith("#") )
+				{
+					continue;
+				}
+				
+				String[] f = line.split("\\s+");
+				
+				if( f.length != 6 )
+				{
+					throw new IOException(file.getName() + ": expected kind size solver time peak cut, found " + line);
+				}
+				
+				baseline.put(f[0] + " " + f[1] + " " + f[2], new Measure(Double.valueOf(f[3]), Double.valueOf(f[4]), Long.valueOf(f[5])));
+			}
+		}
+		finally
+		{
+			br.close();
+		}
+		
+		return baseline;
+	}
+	
+	private static void writeBaseline(File file, Map<String, Measure> measured) throws IOException
+	{
+		PrintWriter out = new PrintWriter(new FileWriter(file));
+		
+		try
+		{
+			out.println("# kind size solver time (ms) peak heap (MB) cut, written by RegressionSuite --record");
+			
+			for( Map.Entry<String, Measure> e : measured.entrySet() )
+			{
+				Measure m = e.getValue();
+				
+				out.println(String.format(Locale.ROOT, "%s %.2f %.1f %d", e.getKey(), m.time, m.peak, m.cut));
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+}
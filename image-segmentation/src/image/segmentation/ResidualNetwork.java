@@ -0,0 +1,13 @@
+package image.segmentation;
+
+/*
+ * primitive view of a flow network used by the max flow solvers, with int capacities
+ * pushing flow along an arc gives the same amount of capacity back to its twin
+ * LongResidualNetwork and DoubleResidualNetwork are the same with long and double capacities
+ */
+public interface ResidualNetwork extends ArcNetwork
+{
+	public int residual(int arc);
+	
+	public void push(int arc, int flow);
+}
@@ -0,0 +1,99 @@
+/*
+ * Scaling of the parallel push-relabel solver
+ * java -cp target/classes image.segmentation.ScalingReport [--threads=n] [--runs=r] file...
+ * every file is solved with 1, 2, 4, ... up to n threads (default: number of processors),
+ * each run is checked against the sequential push-relabel solver (same max flow and same minimum cut)
+ * the best time of r runs (default 5) is reported together with the speedup over one thread
+*/
+
+package image.segmentation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+public class ScalingReport
+{
+	public static void main(String[] args)
+	{
+		Integer threads = Runtime.getRuntime().availableProcessors();
+		Integer runs = 5;
+		List<String> files = new ArrayList<String>();
+		
+		for( int i = 0; i < args.length; ++i )
+		{
+			if( args[i].startsWith("--threads=") )
+			{
+				threads = Integer.valueOf(args[i].substring("--threads=".length()));
+			}
+			else if( args[i].startsWith("--runs=") )
+			{
+				runs = Integer.valueOf(args[i].substring("--runs=".length()));
+			}
+			else
+			{
+				files.add(args[i]);
+			}
+		}
+		
+		List<Integer> counts = new ArrayList<Integer>();
+		for( int t = 1; t < threads; t *= 2 )
+		{
+			counts.add(t);
+		}
+		counts.add(threads);
+		
+		System.out.println("processors: " + Runtime.getRuntime().availableProcessors());
+		System.out.println(String.format("%-24s %8s %10s %12s %8s %s", "file", "threads", "max flow", "best (ms)", "speedup", "cut"));
+		
+		for( String file : files )
+		{
+			FlowNetwork g = null;
+			
+			try
+			{
+				g = (FlowNetwork) Application.build(PixelCosts.read(new File(file)), "grid");
+			}
+			catch( IOException e )
+			{
+				System.out.println("Error: " + e.getMessage());
+				continue;
+			}
+			
+			Integer sink = g.nodeCount();
+			Graph reference = g.pushRelabel(1, sink);
+			BitSet expected = reference.sourceSide(1);
+			double single = 0;
+			
+			// untimed runs so the first thread count is not measured before the jit has compiled the solver
+			for( int r = 0; r < runs; ++r )
+			{
+				g.solve(new ParallelPushRelabel(counts.get(counts.size() - 1)), 1, sink);
+			}
+			
+			for( Integer t : counts )
+			{
+				long best = Long.MAX_VALUE;
+				Graph gs = null;
+				
+				for( int r = 0; r < runs; ++r )
+				{
+					long startTime = System.nanoTime();
+					gs = g.solve(new ParallelPushRelabel(t), 1, sink);
+					best = Math.min(best, System.nanoTime() - startTime);
+				}
+				
+				if( t == 1 )
+				{
+					single = best;
+				}
+				
+				boolean same = gs.maxflow().equals(reference.maxflow()) && gs.sourceSide(1).equals(expected);
+				
+				System.out.println(String.format("%-24s %8d %10d %12.3f %8.2f %s", file, t, gs.maxflow(), best / 1e6, single / best, same ? "same" : "DIFFERENT"));
+			}
+		}
+	}
+}
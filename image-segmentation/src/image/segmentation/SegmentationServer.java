@@ -0,0 +1,372 @@
+/*
+ * Segmentation service, one JVM for many requests
+ * java -cp target/classes image.segmentation.SegmentationServer [--port=n] [--workers=n] [--queue=n] [--warmup=n] [--max-body=bytes] [--max-pixels=n] [options]
+ * listens on the loopback interface, port 8765 by default, the options are those of Application
+ * POST /segment?format=text|pbm|png with the content of a text or binary cost file or of an image as body
+ * answers with the label map (B / F text by default) and the value of its cut in the X-Cut-Value header, the max flow unless --coarse is used
+ * GET /status answers with the number of requests waiting, running and served
+ * the requests are solved by --workers=n threads (default: number of processors), at most --queue=n requests (default 64) wait
+ * for a worker, the others are refused with 503 until the queue has room again
+ * a body larger than --max-body bytes (default 64MB) is refused with 413, an input of more than --max-pixels pixels (default 16M)
+ * with 400, the dimensions of an input are checked before its layers are allocated
+ * every request is answered, a failure of the solver with 500
+ * before listening, --warmup=n small random grids (default 200) are solved so the solver is compiled by the jit before the first request
+ * e.g. curl --data-binary @infile.txt http://127.0.0.1:8765/segment
+*/
+
+package image.segmentation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class SegmentationServer
+{
+	private Application.Options options;
+	private ThreadPoolExecutor pool;
+	private HttpServer server;
+	private AtomicLong served = new AtomicLong(), refused = new AtomicLong();
+	private long maxBody, maxPixels;
+	
+	/*
+	 * body larger than the limit of the server
+	 */
+	private static class TooLarge extends IOException
+	{
+		private static final long serialVersionUID = 1L;
+		
+		TooLarge(String message)
+		{
+			super(message);
+		}
+	}
+	
+	public SegmentationServer(Application.Options options, int port, int workers, int queue) throws IOException
+	{
+		this(options, port, workers, queue, 1L << 26, 1L << 24);
+	}
+	
+	public SegmentationServer(Application.Options options, int port, int workers, int queue, long maxBody, long maxPixels) throws IOException
+	{
+		this.options = options;
+		this.maxBody = maxBody;
+		this.maxPixels = maxPixels;
+		// no rejection handler: a request that does not fit in the queue is refused right away instead of blocking the listener
+		this.pool = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queue));
+		// small answers are sent at once instead of waiting for the client's acknowledgement (about 40 ms)
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		
+		this.server.createContext("/segment", new HttpHandler()
+		{
+			@Override
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				SegmentationServer.this.submit(exchange);
+			}
+		});
+		
+		this.server.createContext("/status", new HttpHandler()
+		{
+			@Override
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				SegmentationServer.this.status(exchange);
+			}
+		});
+	}
+	
+	public static void main(String[] args)
+	{
+		Application.Options options = new Application.Options();
+		int port = 8765;
+		int workers = Runtime.getRuntime().availableProcessors();
+		int queue = 64;
+		int warmup = 200;
+		long maxBody = 1L << 26, maxPixels = 1L << 24;
+		
+		try
+		{
+			for( int i = 0; i < args.length; ++i )
+			{
+				if( args[i].startsWith("--port=") )
+				{
+					port = Integer.valueOf(args[i].substring("--port=".length()));
+				}
+				else if( args[i].startsWith("--workers=") )
+				{
+					workers = Integer.valueOf(args[i].substring("--workers=".length()));
+				}
+				else if( args[i].startsWith("--queue=") )
+				{
+					queue = Integer.valueOf(args[i].substring("--queue=".length()));
+				}
+				else if( args[i].startsWith("--warmup=") )
+				{
+					warmup = Integer.valueOf(args[i].substring("--warmup=".length()));
+				}
+				else if( args[i].startsWith("--max-body=") )
+				{
+					maxBody = Long.valueOf(args[i].substring("--max-body=".length()));
+				}
+				else if( args[i].startsWith("--max-pixels=") )
+				{
+					maxPixels = Long.valueOf(args[i].substring("--max-pixels=".length()));
+				}
+				else if( !options.parse(args[i]) )
+				{
+					System.out.println("Error: unknown option " + args[i]);
+					return;
+				}
+			}
+		}
+		catch( IllegalArgumentException e )
+		{
+			System.out.println("Error: " + e.getMessage());
+			return;
+		}
+		
+		try
+		{
+			SegmentationServer service = new SegmentationServer(options, port, workers, queue, maxBody, maxPixels);
+			long startTime = System.nanoTime();
+			
+			service.warmup(warmup);
+			System.out.println("warm up: " + ( System.nanoTime() - startTime ) / 1000000 + "ms");
+			service.start();
+			System.out.println("listening on http://127.0.0.1:" + port + "/segment, " + workers + " workers, " + queue + " requests queued at most");
+		}
+		catch( IOException e )
+		{
+			System.out.println("Error: " + e.getMessage());
+		}
+	}
+	
+	/*
+	 * the first request loads the classes of the http server, it is made here instead of by the first client
+	 */
+	public void start() throws IOException
+	{
+		this.server.start();
+		
+		HttpURLConnection connection = (HttpURLConnection) new URL("http", "127.0.0.1", this.server.getAddress().getPort(), "/status").openConnection();
+		
+		readAll(connection.getInputStream(), this.maxBody);
+		connection.disconnect();
+	}
+	
+	public void stop()
+	{
+		this.server.stop(0);
+		this.pool.shutdown();
+	}
+	
+	/*
+	 * read, solve and write random grids of a few sizes through the same path as the requests
+	 */
+	public void warmup(int runs) throws IOException
+	{
+		Random random = new Random(1);
+		
+		for( int r = 0; r < runs; ++r )
+		{
+			int size = 4 << ( r % 4 );
+			StringBuilder text = new StringBuilder(size + " " + size + "\n");
+			
+			for( int layer = 0; layer < 4; ++layer )
+			{
+				int rows = layer == 3 ? size - 1 : size, cols = layer == 2 ? size - 1 : size;
+				
+				text.append('\n');
+				
+				for( int i = 0; i < rows; ++i )
+				{
+					for( int j = 0; j < cols; ++j )
+					{
+						text.append(random.nextInt(20)).append(' ');
+					}
+					
+					text.append('\n');
+				}
+			}
+			
+			PixelCosts costs = this.options.read(text.toString().getBytes("US-ASCII"));
+			
+			this.options.segment(costs).writeText(new ByteArrayOutputStream());
+		}
+	}
+	
+	private void submit(final HttpExchange exchange) throws IOException
+	{
+		if( !exchange.getRequestMethod().equals("POST") )
+		{
+			this.reply(exchange, 405, "use POST with the content of a file as body\n");
+			return;
+		}
+		
+		try
+		{
+			this.pool.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					SegmentationServer.this.serve(exchange);
+				}
+			});
+		}
+		catch( RejectedExecutionException e )
+		{
+			this.refused.incrementAndGet();
+			exchange.getResponseHeaders().set("Retry-After", "1");
+			this.reply(exchange, 503, "too many requests waiting\n");
+		}
+	}
+	
+	private void serve(HttpExchange exchange)
+	{
+		try
+		{
+			try
+			{
+				long startTime = System.nanoTime();
+				String length = exchange.getRequestHeaders().getFirst("Content-Length");
+				
+				// refused before reading, the body of a client that announced its size is never buffered
+				if( length != null && Long.valueOf(length.trim()) > this.maxBody )
+				{
+					throw new TooLarge("a body of " + length.trim() + " bytes is larger than " + this.maxBody);
+				}
+				
+				PixelCosts costs = this.options.read(readAll(exchange.getRequestBody(), this.maxBody), this.maxPixels);
+				LabelMap labels = this.options.segment(costs);
+				String format = format(exchange.getRequestURI().getQuery());
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				
+				if( format.equals("png") )
+				{
+					labels.writePNG(out);
+				}
+				else if( format.equals("pbm") )
+				{
+					labels.writePBM(out);
+				}
+				else
+				{
+					labels.writeText(out);
+				}
+				
+				exchange.getResponseHeaders().set("Content-Type", format.equals("png") ? "image/png" : format.equals("pbm") ? "image/x-portable-bitmap" : "text/plain");
+				exchange.getResponseHeaders().set("X-Cut-Value", String.valueOf(BandedCut.energy(costs, labels)));
+				exchange.getResponseHeaders().set("X-Solve-Time-Us", String.valueOf(( System.nanoTime() - startTime ) / 1000));
+				exchange.sendResponseHeaders(200, out.size());
+				exchange.getResponseBody().write(out.toByteArray());
+				exchange.close();
+				this.served.incrementAndGet();
+			}
+			catch( TooLarge e )
+			{
+				this.reply(exchange, 413, "Error: " + e.getMessage() + "\n");
+			}
+			catch( IOException e )
+			{
+				this.reply(exchange, 400, "Error: " + e.getMessage() + "\n");
+			}
+			catch( NumberFormatException e )
+			{
+				this.reply(exchange, 400, "Error: Content-Length is not a number\n");
+			}
+			catch( RuntimeException e )
+			{
+				this.reply(exchange, 500, "Error: " + e + "\n");
+			}
+			catch( Error e )
+			{
+				// an OutOfMemoryError only ends this request, its arrays are garbage once the stack is unwound
+				this.reply(exchange, 500, "Error: " + e + "\n");
+			}
+		}
+		catch( IOException e )
+		{
+			// the client went away, nothing to answer to
+		}
+		finally
+		{
+			// a no-op when the answer was sent, the client is not left waiting otherwise
+			exchange.close();
+		}
+	}
+	
+	private void status(HttpExchange exchange) throws IOException
+	{
+		this.reply(exchange, 200, "waiting: " + this.pool.getQueue().size() + "\nrunning: " + this.pool.getActiveCount() + "\nserved: " + this.served.get() + "\nrefused: " + this.refused.get() + "\n");
+	}
+	
+	private void reply(HttpExchange exchange, int code, String message) throws IOException
+	{
+		byte[] body = message.getBytes("UTF-8");
+		
+		exchange.getResponseHeaders().set("Content-Type", "text/plain");
+		exchange.sendResponseHeaders(code, body.length);
+		exchange.getResponseBody().write(body);
+		exchange.close();
+	}
+	
+	/*
+	 * format=... of the query string, text if there is none
+	 */
+	private static String format(String query)
+	{
+		if( query != null )
+		{
+			for( String parameter : query.split("&") )
+			{
+				if( parameter.startsWith("format=") )
+				{
+					return parameter.substring("format=".length());
+				}
+			}
+		}
+		
+		return "text";
+	}
+	
+	/*
+	 * TooLarge as soon as more than limit bytes were read, for bodies sent without a Content-Length
+	 */
+	private static byte[] readAll(InputStream in, long limit) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1 << 16];
+		int count;
+		
+		while( ( count = in.read(buffer) ) != -1 )
+		{
+			out.write(buffer, 0, count);
+			
+			if( out.size() > limit )
+			{
+				in.close();
+				throw new TooLarge("the body is larger than " + limit + " bytes");
+			}
+		}
+		
+		in.close();
+		
+		return out.toByteArray();
+	}
+}
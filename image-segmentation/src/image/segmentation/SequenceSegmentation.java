@@ -0,0 +1,344 @@
+/*
+ * Segmentation of a sequence of frames as a pipeline
+ * java -cp target/classes image.segmentation.SequenceSegmentation [--output=dir] [--format=text|pbm|png] [--depth=n] [--solvers=n] [options] path...
+ * the frames are the files of the paths (see BatchSegmentation), in the order of their names
+ * a reader, a builder, --solvers=n solvers (default 1) and a writer run at the same time, handing the frames over through queues
+ * of --depth=n frames (default 2): frame N + 1 is read while frame N is solved and frame N - 1 is written
+ * the time every stage was busy and the frames per second are printed at the end
+*/
+
+package image.segmentation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+public class SequenceSegmentation
+{
+	/*
+	 * a frame on its way through the pipeline, times in nanoseconds
+	 */
+	private static class Frame
+	{
+		File file, target;
+		PixelCosts costs;
+		Graph graph;
+		LabelMap labels;
+		long read, build, solve, write;
+		String error;
+	}
+	
+	// put after the last frame, every stage passes it on before it stops
+	private static final Frame END = new Frame();
+	
+	/*
+	 * takes frames from in, works on them and puts them on out, until END
+	 * a frame that failed in an earlier stage is passed on as it is
+	 */
+	private static abstract class Stage extends Thread
+	{
+		BlockingQueue<Frame> in, out;
+		// END put on out when the stage stops, one per thread of the next stage
+		int ends;
+		
+		Stage(String name, BlockingQueue<Frame> in, BlockingQueue<Frame> out, int ends)
+		{
+			super(name);
+			this.in = in;
+			this.out = out;
+			this.ends = ends;
+		}
+		
+		abstract void process(Frame f) throws IOException;
+		
+		@Override
+		public void run()
+		{
+			try
+			{
+				while( true )
+				{
+					Frame f = this.in.take();
+					
+					if( f == END )
+					{
+						break;
+					}
+					
+					if( f.error == null )
+					{
+						try
+						{
+							this.process(f);
+						}
+						catch( IOException e )
+						{
+							f.error = e.getMessage();
+						}
+						catch( RuntimeException e )
+						{
+							f.error = e.toString();
+						}
+					}
+					
+					if( this.out != null )
+					{
+						this.out.put(f);
+					}
+				}
+				
+				for( int i = 0; this.out != null && i < this.ends; ++i )
+				{
+					this.out.put(END);
+				}
+			}
+			catch( InterruptedException e )
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	public static void main(String[] args)
+	{
+		final Application.Options options = new Application.Options();
+		String output = null;
+		String format = "text";
+		int depth = 2;
+		int solvers = 1;
+		List<File> files = new ArrayList<File>();
+		
+		try
+		{
+			for( int i = 0; i < args.length; ++i )
+			{
+				if( args[i].startsWith("--output=") )
+				{
+					output = args[i].substring("--output=".length());
+				}
+				else if( args[i].startsWith("--format=") )
+				{
+					format = args[i].substring("--format=".length());
+				}
+				else if( args[i].startsWith("--depth=") )
+				{
+					depth = Integer.valueOf(args[i].substring("--depth=".length()));
+				}
+				else if( args[i].startsWith("--solvers=") )
+				{
+					solvers = Integer.valueOf(args[i].substring("--solvers=".length()));
+				}
+				else if( !options.parse(args[i]) )
+				{
+					try
+					{
+						files.addAll(BatchSegmentation.expand(args[i]));
+					}
+					catch( IOException e )
+					{
+						System.out.println("Error: " + e.getMessage());
+					}
+				}
+			}
+		}
+		catch( IllegalArgumentException e )
+		{
+			System.out.println("Error: " + e.getMessage());
+			return;
+		}
+		
+		if( depth < 1 || solvers < 1 )
+		{
+			System.out.println("Error: --depth and --solvers must be at least 1");
+			return;
+		}
+		
+		if( output != null )
+		{
+			new File(output).mkdirs();
+		}
+		
+		String extension = format.equals("png") ? ".png" : format.equals("pbm") ? ".pbm" : ".out";
+		BlockingQueue<Frame> toRead = new ArrayBlockingQueue<Frame>(depth);
+		BlockingQueue<Frame> toBuild = new ArrayBlockingQueue<Frame>(depth);
+		BlockingQueue<Frame> toSolve = new ArrayBlockingQueue<Frame>(depth);
+		BlockingQueue<Frame> toWrite = new ArrayBlockingQueue<Frame>(depth);
+		final List<Frame> done = new ArrayList<Frame>();
+		List<Stage> stages = new ArrayList<Stage>();
+		
+		stages.add(new Stage("read", toRead, toBuild, 1)
+		{
+			@Override
+			void process(Frame f) throws IOException
+			{
+				long t0 = System.nanoTime();
+				f.costs = options.read(f.file);
+				f.read = System.nanoTime() - t0;
+			}
+		});
+		
+		stages.add(new Stage("build", toBuild, toSolve, solvers)
+		{
+			@Override
+			void process(Frame f) throws IOException
+			{
+				// the coarse-to-fine mode and the reduction build their own graphs while they solve
+				if( options.graph() )
+				{
+					long t0 = System.nanoTime();
+					f.graph = options.build(f.costs);
+					f.build = System.nanoTime() - t0;
+				}
+			}
+		});
+		
+		for( int s = 0; s < solvers; ++s )
+		{
+			stages.add(new Stage("solve-" + s, toSolve, toWrite, 1)
+			{
+				@Override
+				void process(Frame f) throws IOException
+				{
+					long t0 = System.nanoTime();
+					
+					if( !options.graph() )
+					{
+						f.labels = options.segment(f.costs);
+					}
+					else
+					{
+						f.labels = LabelMap.of(options.cut(f.graph), f.costs.rows, f.costs.cols);
+						// the graphs are the largest part of a frame, they are not kept until the end
+						f.graph = null;
+					}
+					
+					f.solve = System.nanoTime() - t0;
+				}
+			});
+		}
+		
+		// the writer waits for the END of every solver
+		final int producers = solvers;
+		Stage writer = new Stage("write", toWrite, null, 0)
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					for( int left = producers; left > 0; )
+					{
+						Frame f = this.in.take();
+						
+						if( f == END )
+						{
+							left--;
+							continue;
+						}
+						
+						if( f.error == null )
+						{
+							try
+							{
+								this.process(f);
+							}
+							catch( IOException e )
+							{
+								f.error = e.getMessage();
+							}
+							catch( RuntimeException e )
+							{
+								f.error = e.toString();
+							}
+						}
+						
+						f.costs = null;
+						f.labels = null;
+						done.add(f);
+					}
+				}
+				catch( InterruptedException e )
+				{
+					Thread.currentThread().interrupt();
+				}
+			}
+			
+			@Override
+			void process(Frame f) throws IOException
+			{
+				long t0 = System.nanoTime();
+				f.labels.write(f.target);
+				f.write = System.nanoTime() - t0;
+			}
+		};
+		stages.add(writer);
+		
+		long startTime = System.nanoTime();
+		
+		for( Stage s : stages )
+		{
+			s.start();
+		}
+		
+		try
+		{
+			for( File file : files )
+			{
+				Frame f = new Frame();
+				
+				f.file = file;
+				f.target = new File(output == null ? file.getParentFile() : new File(output), file.getName() + extension);
+				toRead.put(f);
+			}
+			
+			toRead.put(END);
+			
+			for( Stage s : stages )
+			{
+				s.join();
+			}
+		}
+		catch( InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			return;
+		}
+		
+		long elapsed = System.nanoTime() - startTime;
+		long read = 0, build = 0, solve = 0, write = 0;
+		int failed = 0;
+		
+		for( Frame f : done )
+		{
+			if( f.error != null )
+			{
+				System.out.println(String.format("%-32s %s", f.file.getPath(), "Error: " + f.error));
+				failed++;
+				continue;
+			}
+			
+			read += f.read;
+			build += f.build;
+			solve += f.solve;
+			write += f.write;
+		}
+		
+		int frames = done.size() - failed;
+		
+		System.out.println(String.format("%-8s %12s %14s", "stage", "busy (ms)", "per frame (ms)"));
+		System.out.println(String.format("%-8s %12.1f %14.2f", "read", read / 1e6, read / 1e6 / Math.max(1, frames)));
+		System.out.println(String.format("%-8s %12.1f %14.2f", "build", build / 1e6, build / 1e6 / Math.max(1, frames)));
+		System.out.println(String.format("%-8s %12.1f %14.2f", "solve", solve / 1e6, solve / 1e6 / Math.max(1, frames)));
+		System.out.println(String.format("%-8s %12.1f %14.2f", "write", write / 1e6, write / 1e6 / Math.max(1, frames)));
+		System.out.println(String.format("%d frames, %d failed, depth %d, %d solvers: %.1f ms elapsed, %.1f ms of work, %.2f frames/s (%.2f frames/s without the pipeline)",
+				frames, failed, depth, solvers, elapsed / 1e6, ( read + build + solve + write ) / 1e6, frames / ( elapsed / 1e9 ), frames / Math.max(1e-9, ( read + build + solve + write ) / 1e9)));
+		
+		if( options.metrics instanceof SolverCounters )
+		{
+			System.out.println(options.metrics);
+		}
+	}
+}
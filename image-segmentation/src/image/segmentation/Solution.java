@@ -1,5 +1,6 @@
 package image.segmentation;
 
+import java.util.BitSet;
 import java.util.Set;
 
 public class Solution
@@ -9,6 +10,25 @@ public class Solution
 	
 	public Set<Integer> background, foreground;
 	
+	/*
+	 * cut of a graph of nodes 1..n given the nodes on the source side, node i being bit i
+	 * both sides are sets over bit sets of their own, removing a node from one side does not add it to the other
+	 */
+	public static Solution cut(BitSet sourceSide, int n)
+	{
+		Solution mincut = new Solution();
+		BitSet background = sourceSide.get(0, n + 1);
+		BitSet foreground = new BitSet(n + 1);
+		
+		background.clear(0);
+		foreground.set(1, n + 1);
+		foreground.andNot(background);
+		mincut.background = new NodeSet(background);
+		mincut.foreground = new NodeSet(foreground);
+		
+		return mincut;
+	}
+	
 	@Override
 	public String toString()
 	{
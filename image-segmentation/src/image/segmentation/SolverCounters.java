@@ -0,0 +1,111 @@
+package image.segmentation;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * totals of everything the solvers reported, safe to share between the threads of the batch and sequence modes
+ */
+public class SolverCounters implements SolverMetrics
+{
+	private final AtomicLong augmentations = new AtomicLong(), pathLength = new AtomicLong();
+	private final AtomicLong searches = new AtomicLong(), visited = new AtomicLong();
+	private final AtomicLong pushes = new AtomicLong(), relabels = new AtomicLong();
+	// nanoseconds by phase
+	private final Map<String, AtomicLong> phases = new TreeMap<String, AtomicLong>();
+	
+	@Override
+	public void augmentation(int length)
+	{
+		this.augmentations.incrementAndGet();
+		this.pathLength.addAndGet(length);
+	}
+	
+	@Override
+	public void search(int visited)
+	{
+		this.searches.incrementAndGet();
+		this.visited.addAndGet(visited);
+	}
+	
+	@Override
+	public void pushRelabel(long pushes, long relabels)
+	{
+		this.pushes.addAndGet(pushes);
+		this.relabels.addAndGet(relabels);
+	}
+	
+	@Override
+	public void phase(String phase, long nanos)
+	{
+		AtomicLong time;
+		
+		synchronized( this.phases )
+		{
+			time = this.phases.get(phase);
+			
+			if( time == null )
+			{
+				time = new AtomicLong();
+				this.phases.put(phase, time);
+			}
+		}
+		
+		time.addAndGet(nanos);
+	}
+	
+	public long augmentations()
+	{
+		return this.augmentations.get();
+	}
+	
+	public long visited()
+	{
+		return this.visited.get();
+	}
+	
+	public long pushes()
+	{
+		return this.pushes.get();
+	}
+	
+	public long relabels()
+	{
+		return this.relabels.get();
+	}
+	
+	/*
+	 * nanoseconds spent in a phase, 0 if it was never reported
+	 */
+	public long time(String phase)
+	{
+		synchronized( this.phases )
+		{
+			AtomicLong time = this.phases.get(phase);
+			
+			return time == null ? 0 : time.get();
+		}
+	}
+	
+	@Override
+	public String toString()
+	{
+		long a = this.augmentations.get(), s = this.searches.get();
+		StringBuilder sb = new StringBuilder();
+		
+		sb.append("augmentations: " + a + ( a == 0 ? "" : String.format(" (mean path length %.1f)", this.pathLength.get() / (double) a) ));
+		sb.append(", searches: " + s + ( s == 0 ? "" : String.format(" (mean nodes visited %.1f)", this.visited.get() / (double) s) ));
+		sb.append(", pushes: " + this.pushes.get() + ", relabels: " + this.relabels.get());
+		
+		synchronized( this.phases )
+		{
+			for( Map.Entry<String, AtomicLong> e : this.phases.entrySet() )
+			{
+				sb.append(", " + e.getKey() + ": " + e.getValue().get() / 1000000 + "ms");
+			}
+		}
+		
+		return sb.toString();
+	}
+}
@@ -0,0 +1,136 @@
+package image.segmentation;
+
+import java.util.Arrays;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/*
+ * what the solvers report, as JFR events recorded with -XX:StartFlightRecording or jcmd JFR.start
+ * a Phase event is committed for every build, solve and cut, the counts reported by the solver on the same thread since
+ * the last solve go into a Solve event committed with the solve phase, so there is no event per augmentation
+ * only loaded with --metrics=jfr, the jdk.jfr classes need java 11
+ */
+public class SolverEvents implements SolverMetrics
+{
+	@Name("image.segmentation.Phase")
+	@Label("Segmentation Phase")
+	@Category("Image Segmentation")
+	@Description("Time spent building the graph, solving it or extracting the cut")
+	static class Phase extends Event
+	{
+		@Label("Phase")
+		String phase;
+		
+		@Label("Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long time;
+	}
+	
+	@Name("image.segmentation.Solve")
+	@Label("Max Flow Solve")
+	@Category("Image Segmentation")
+	@Description("Work done by one max flow solve")
+	static class Solve extends Event
+	{
+		@Label("Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long time;
+		
+		@Label("Augmentations")
+		long augmentations;
+		
+		@Label("Total Path Length")
+		@Description("Arcs of all the augmenting paths")
+		long pathLength;
+		
+		@Label("Searches")
+		long searches;
+		
+		@Label("Nodes Visited")
+		@Description("Nodes reached by all the searches")
+		long visited;
+		
+		@Label("Pushes")
+		long pushes;
+		
+		@Label("Relabels")
+		long relabels;
+	}
+	
+	// counts of the solve running on each thread: augmentations, path length, searches, visited, pushes, relabels
+	private final ThreadLocal<long[]> counts = new ThreadLocal<long[]>()
+	{
+		@Override
+		protected long[] initialValue()
+		{
+			return new long[6];
+		}
+	};
+	
+	@Override
+	public void augmentation(int length)
+	{
+		long[] c = this.counts.get();
+		
+		c[0]++;
+		c[1] += length;
+	}
+	
+	@Override
+	public void search(int visited)
+	{
+		long[] c = this.counts.get();
+		
+		c[2]++;
+		c[3] += visited;
+	}
+	
+	@Override
+	public void pushRelabel(long pushes, long relabels)
+	{
+		long[] c = this.counts.get();
+		
+		c[4] += pushes;
+		c[5] += relabels;
+	}
+	
+	@Override
+	public void phase(String phase, long nanos)
+	{
+		Phase p = new Phase();
+		
+		if( p.shouldCommit() )
+		{
+			p.phase = phase;
+			p.time = nanos;
+			p.commit();
+		}
+		
+		if( !phase.equals("solve") )
+		{
+			return;
+		}
+		
+		long[] c = this.counts.get();
+		Solve s = new Solve();
+		
+		if( s.shouldCommit() )
+		{
+			s.time = nanos;
+			s.augmentations = c[0];
+			s.pathLength = c[1];
+			s.searches = c[2];
+			s.visited = c[3];
+			s.pushes = c[4];
+			s.relabels = c[5];
+			s.commit();
+		}
+		
+		Arrays.fill(c, 0);
+	}
+}
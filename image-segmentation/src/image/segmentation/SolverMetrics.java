@@ -0,0 +1,49 @@
+package image.segmentation;
+
+/*
+ * listener told what the solvers do, set on a graph with Graph.metrics before it is solved
+ * the solvers count in local variables and report once per search, augmentation or solve, never from their inner loops,
+ * so NONE, the default, costs a call to an empty method at most
+ * SolverCounters adds everything up, SolverEvents turns it into JFR events
+ */
+public interface SolverMetrics
+{
+	public static final SolverMetrics NONE = new SolverMetrics()
+	{
+		@Override
+		public void augmentation(int length)
+		{}
+		
+		@Override
+		public void search(int visited)
+		{}
+		
+		@Override
+		public void pushRelabel(long pushes, long relabels)
+		{}
+		
+		@Override
+		public void phase(String phase, long nanos)
+		{}
+	};
+	
+	/*
+	 * flow was pushed along a path of length arcs
+	 */
+	public void augmentation(int length);
+	
+	/*
+	 * a breadth first search, or the growth of the Boykov-Kolmogorov trees during a solve, reached visited nodes
+	 */
+	public void search(int visited);
+	
+	/*
+	 * pushes and relabels of one push-relabel solve
+	 */
+	public void pushRelabel(long pushes, long relabels);
+	
+	/*
+	 * nanoseconds spent in one phase of a segmentation: build, solve or cut
+	 */
+	public void phase(String phase, long nanos);
+}
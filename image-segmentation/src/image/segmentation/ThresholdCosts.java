@@ -0,0 +1,41 @@
+package image.segmentation;
+
+/*
+ * pixels brighter than the threshold lean to the background and darker ones to the foreground,
+ * by as much as their distance to the threshold
+ * separating two neighbors always costs the same penalty (Potts model)
+ */
+public class ThresholdCosts implements CostFunction
+{
+	protected int threshold;
+	protected int penalty;
+	
+	public ThresholdCosts(int threshold, int penalty)
+	{
+		if( penalty < 0 )
+		{
+			throw new IllegalArgumentException("penalty can not be negative");
+		}
+		
+		this.threshold = threshold;
+		this.penalty = penalty;
+	}
+	
+	@Override
+	public int source(int gray)
+	{
+		return Math.max(0, gray - this.threshold);
+	}
+	
+	@Override
+	public int sink(int gray)
+	{
+		return Math.max(0, this.threshold - gray);
+	}
+	
+	@Override
+	public int penalty(int gray, int neighbor)
+	{
+		return this.penalty;
+	}
+}
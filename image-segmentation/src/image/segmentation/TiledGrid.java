@@ -0,0 +1,642 @@
+package image.segmentation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * pixel grid split into square tiles, every tile keeps the arcs of its own pixels
+ * the arcs are numbered like in GridGraph, only where they are stored changes
+ * with a spill directory at most `resident` tiles are kept in memory, the others are written to a file
+ * and read back when they are needed, tiles being solved are pinned and never written out
+ * push-relabel runs region by region (see RegionPushRelabel), so the whole graph never has to be in memory
+ * every grid and every solved copy has files of its own, close deletes them
+ */
+public class TiledGrid extends GridGraph
+{
+	// slots of a pixel inside a tile: the six arcs of GridGraph, then the arc from the source and the one from the sink
+	static final int SLOTS = 8, FROM_SOURCE = 6, FROM_SINK = 7;
+	
+	private int size;
+	private int tileRows, tileCols;
+	
+	// resident tiles, null for the ones on disk
+	private Tile[] tiles;
+	private int[] pins;
+	
+	private File directory;
+	private File[] files;
+	private int resident;
+	// tiles in memory, least recently used first
+	private LinkedHashMap<Integer, Tile> loaded;
+	
+	/*
+	 * pixels of one tile, row by row, SLOTS arcs each
+	 */
+	static class Tile
+	{
+		int row, col, height, width;
+		int[] residuals, capacities;
+		// used by RegionPushRelabel
+		int[] excess, label;
+		
+		Tile(int row, int col, int height, int width)
+		{
+			int m = height * width;
+			
+			this.row = row;
+			this.col = col;
+			this.height = height;
+			this.width = width;
+			this.residuals = new int[SLOTS * m];
+			this.capacities = new int[SLOTS * m];
+			this.excess = new int[m];
+			this.label = new int[m];
+		}
+		
+		Tile(Tile t)
+		{
+			this.row = t.row;
+			this.col = t.col;
+			this.height = t.height;
+			this.width = t.width;
+			this.residuals = t.residuals.clone();
+			this.capacities = t.capacities.clone();
+			this.excess = t.excess.clone();
+			this.label = t.label.clone();
+		}
+	}
+	
+	public TiledGrid(Integer rows, Integer cols, Integer size)
+	{
+		this(rows, cols, size, null, 0);
+	}
+	
+	/*
+	 * directory null keeps every tile in memory
+	 */
+	public TiledGrid(Integer rows, Integer cols, Integer size, File directory, Integer resident)
+	{
+		super(rows, cols, false);
+		
+		if( size < 1 )
+		{
+			throw new IllegalArgumentException("tile size must be at least 1");
+		}
+		
+		if( directory != null && resident < 1 )
+		{
+			throw new IllegalArgumentException("at least one tile has to stay in memory");
+		}
+		
+		this.size = size;
+		this.tileRows = ( rows + size - 1 ) / size;
+		this.tileCols = ( cols + size - 1 ) / size;
+		this.tiles = new Tile[this.tileRows * this.tileCols];
+		this.pins = new int[this.tiles.length];
+		this.directory = directory;
+		this.resident = resident;
+		
+		if( directory == null )
+		{
+			for( int t = 0; t < this.tiles.length; ++t )
+			{
+				this.tiles[t] = this.create(t);
+			}
+		}
+		else
+		{
+			this.files = new File[this.tiles.length];
+			this.loaded = new LinkedHashMap<Integer, Tile>(16, 0.75f, true);
+		}
+	}
+	
+	public TiledGrid(TiledGrid g)
+	{
+		this(g.rows(), g.cols(), g.size, g.directory, g.resident);
+		
+		this.maxflow = g.maxflow;
+		this.metrics = g.metrics;
+		
+		for( int t = 0; t < this.tiles.length; ++t )
+		{
+			Tile copy = new Tile(g.acquire(t));
+			g.release(t);
+			
+			this.acquire(t);
+			this.tiles[t] = copy;
+			
+			if( this.loaded != null )
+			{
+				this.loaded.put(t, copy);
+			}
+			
+			this.release(t);
+		}
+	}
+	
+	@Override
+	protected TiledGrid copy()
+	{
+		return new TiledGrid(this);
+	}
+	
+	/*
+	 * delete the spill files and drop the tiles, for a grid or a solved copy that is no longer needed
+	 */
+	@Override
+	public synchronized void close()
+	{
+		if( this.files != null )
+		{
+			for( int t = 0; t < this.files.length; ++t )
+			{
+				if( this.files[t] != null )
+				{
+					this.files[t].delete();
+					this.files[t] = null;
+				}
+			}
+			
+			this.loaded.clear();
+		}
+		
+		Arrays.fill(this.tiles, null);
+	}
+	
+	public int tileCount()
+	{
+		return this.tiles.length;
+	}
+	
+	public int tileRows()
+	{
+		return this.tileRows;
+	}
+	
+	public int tileCols()
+	{
+		return this.tileCols;
+	}
+	
+	private Tile create(int t)
+	{
+		int row = ( t / this.tileCols ) * this.size, col = ( t % this.tileCols ) * this.size;
+		
+		return new Tile(row, col, Math.min(this.size, this.rows() - row), Math.min(this.size, this.cols() - col));
+	}
+	
+	/*
+	 * get a tile into memory and pin it, every acquire needs a release
+	 */
+	synchronized Tile acquire(int t)
+	{
+		this.pins[t]++;
+		
+		if( this.loaded == null )
+		{
+			return this.tiles[t];
+		}
+		
+		Tile x = this.loaded.get(t);
+		
+		if( x == null )
+		{
+			x = this.files[t] == null ? this.create(t) : this.load(t);
+			this.tiles[t] = x;
+			this.loaded.put(t, x);
+			this.evict();
+		}
+		
+		return x;
+	}
+	
+	synchronized void release(int t)
+	{
+		this.pins[t]--;
+		
+		if( this.loaded != null )
+		{
+			this.evict();
+		}
+	}
+	
+	/*
+	 * write out the least recently used tiles nobody holds until at most `resident` are left
+	 */
+	private void evict()
+	{
+		Iterator<Map.Entry<Integer, Tile>> iter = this.loaded.entrySet().iterator();
+		
+		while( this.loaded.size() > this.resident && iter.hasNext() )
+		{
+			Map.Entry<Integer, Tile> cur = iter.next();
+			int t = cur.getKey();
+			
+			if( this.pins[t] == 0 )
+			{
+				this.save(t, cur.getValue());
+				this.tiles[t] = null;
+				iter.remove();
+			}
+		}
+	}
+	
+	private void save(int t, Tile x)
+	{
+		try
+		{
+			if( this.files[t] == null )
+			{
+				this.files[t] = File.createTempFile("tile" + t + "-", ".bin", this.directory);
+				this.files[t].deleteOnExit();
+			}
+			
+			RandomAccessFile file = new RandomAccessFile(this.files[t], "rw");
+			
+			try
+			{
+				FileChannel channel = file.getChannel();
+				ByteBuffer buffer = ByteBuffer.allocate(4 * ( x.residuals.length + x.capacities.length + x.excess.length + x.label.length ));
+				IntBuffer ints = buffer.asIntBuffer();
+				
+				ints.put(x.residuals).put(x.capacities).put(x.excess).put(x.label);
+				channel.truncate(0);
+				
+				while( buffer.hasRemaining() )
+				{
+					channel.write(buffer);
+				}
+			}
+			finally
+			{
+				file.close();
+			}
+		}
+		catch( IOException e )
+		{
+			throw new IllegalStateException("could not write tile " + t + " to " + this.directory, e);
+		}
+	}
+	
+	private Tile load(int t)
+	{
+		Tile x = this.create(t);
+		
+		try
+		{
+			RandomAccessFile file = new RandomAccessFile(this.files[t], "r");
+			
+			try
+			{
+				FileChannel channel = file.getChannel();
+				ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+				
+				while( buffer.hasRemaining() && channel.read(buffer) >= 0 )
+				{}
+				
+				buffer.flip();
+				buffer.asIntBuffer().get(x.residuals).get(x.capacities).get(x.excess).get(x.label);
+			}
+			finally
+			{
+				file.close();
+			}
+		}
+		catch( IOException e )
+		{
+			throw new IllegalStateException("could not read tile " + t + " from " + this.files[t], e);
+		}
+		
+		return x;
+	}
+	
+	/*
+	 * tile holding pixel p
+	 */
+	int tileOf(int p)
+	{
+		return ( p / this.cols() / this.size ) * this.tileCols + ( p % this.cols() ) / this.size;
+	}
+	
+	/*
+	 * slot of an arc inside the tile of its pixel
+	 */
+	private int slot(Tile x, int p, int d)
+	{
+		return SLOTS * ( ( p / this.cols() - x.row ) * x.width + p % this.cols() - x.col ) + d;
+	}
+	
+	/*
+	 * pixel an arc belongs to, as pixel * SLOTS + slot
+	 */
+	private long locate(int arc)
+	{
+		int n = this.rows() * this.cols();
+		
+		if( arc >= 7 * n )
+		{
+			return SLOTS * (long) ( arc - 7 * n ) + FROM_SINK;
+		}
+		
+		if( arc >= 6 * n )
+		{
+			return SLOTS * (long) ( arc - 6 * n ) + FROM_SOURCE;
+		}
+		
+		return SLOTS * (long) ( arc / 6 ) + arc % 6;
+	}
+	
+	@Override
+	public int residual(int arc)
+	{
+		long at = this.locate(arc);
+		int p = (int) ( at / SLOTS ), t = this.tileOf(p);
+		Tile x = this.acquire(t);
+		
+		try
+		{
+			return x.residuals[this.slot(x, p, (int) ( at % SLOTS ))];
+		}
+		finally
+		{
+			this.release(t);
+		}
+	}
+	
+	@Override
+	protected int capacity(int arc)
+	{
+		long at = this.locate(arc);
+		int p = (int) ( at / SLOTS ), t = this.tileOf(p);
+		Tile x = this.acquire(t);
+		
+		try
+		{
+			return x.capacities[this.slot(x, p, (int) ( at % SLOTS ))];
+		}
+		finally
+		{
+			this.release(t);
+		}
+	}
+	
+	@Override
+	protected void store(int arc, int capacity, int residual)
+	{
+		long at = this.locate(arc);
+		int p = (int) ( at / SLOTS ), t = this.tileOf(p);
+		Tile x = this.acquire(t);
+		int s = this.slot(x, p, (int) ( at % SLOTS ));
+		
+		x.capacities[s] = capacity;
+		x.residuals[s] = residual;
+		this.release(t);
+	}
+	
+	@Override
+	public void push(int arc, int flow)
+	{
+		int t = this.twin(arc);
+		
+		this.store(arc, this.capacity(arc), this.residual(arc) - flow);
+		this.store(t, this.capacity(t), this.residual(t) + flow);
+	}
+	
+	@Override
+	public Graph createNetwork()
+	{
+		for( int t = 0; t < this.tiles.length; ++t )
+		{
+			Tile x = this.acquire(t);
+			
+			System.arraycopy(x.capacities, 0, x.residuals, 0, x.residuals.length);
+			this.release(t);
+		}
+		
+		return this;
+	}
+	
+	/*
+	 * the grid's own source and sink are solved region by region, other terminals fall back to the arc view
+	 */
+	@Override
+	public Graph pushRelabel(Integer nodeU, Integer nodeV)
+	{
+		return this.parallelPushRelabel(nodeU, nodeV, 1);
+	}
+	
+	@Override
+	public Graph parallelPushRelabel(Integer nodeU, Integer nodeV, Integer threads)
+	{
+		if( nodeU != 1 || nodeV != this.nodeCount() )
+		{
+			return super.parallelPushRelabel(nodeU, nodeV, threads);
+		}
+		
+		TiledGrid h = this.copy();
+		
+		h.maxflow = new RegionPushRelabel(threads).maxflow(h);
+		
+		return h;
+	}
+	
+	/*
+	 * nodes reachable from the source, found tile by tile
+	 * a tile is searched again whenever a search in a neighboring tile crosses into it
+	 */
+	@Override
+	public BitSet sourceSide(Integer nodeU)
+	{
+		if( nodeU != 1 )
+		{
+			return super.sourceSide(nodeU);
+		}
+		
+		int count = this.tiles.length;
+		boolean[][] reached = new boolean[count][];
+		// pixels reached from a neighboring tile, by tile and local pixel
+		List<ArrayDeque<Integer>> entered = new ArrayList<ArrayDeque<Integer>>(count);
+		ArrayDeque<Integer> work = new ArrayDeque<Integer>();
+		boolean[] queued = new boolean[count];
+		
+		for( int t = 0; t < count; ++t )
+		{
+			entered.add(new ArrayDeque<Integer>());
+			work.add(t);
+			queued[t] = true;
+		}
+		
+		while( !work.isEmpty() )
+		{
+			int t = work.poll();
+			Tile x = this.acquire(t);
+			int m = x.height * x.width;
+			int[] queue = new int[m];
+			int head = 0, tail = 0;
+			
+			queued[t] = false;
+			
+			if( reached[t] == null )
+			{
+				reached[t] = new boolean[m];
+				
+				for( int p = 0; p < m; ++p )
+				{
+					if( x.residuals[SLOTS * p + FROM_SOURCE] > 0 )
+					{
+						reached[t][p] = true;
+						queue[tail++] = p;
+					}
+				}
+			}
+			
+			while( !entered.get(t).isEmpty() )
+			{
+				int p = entered.get(t).poll();
+				
+				if( !reached[t][p] )
+				{
+					reached[t][p] = true;
+					queue[tail++] = p;
+				}
+			}
+			
+			while( head < tail )
+			{
+				int p = queue[head++];
+				int i = p / x.width, j = p % x.width;
+				
+				for( int d = 0; d < 4; ++d )
+				{
+					if( x.residuals[SLOTS * p + d] <= 0 )
+					{
+						continue;
+					}
+					
+					int q = this.inside(x, i, j, d);
+					
+					if( q != -1 )
+					{
+						if( !reached[t][q] )
+						{
+							reached[t][q] = true;
+							queue[tail++] = q;
+						}
+						
+						continue;
+					}
+					
+					int nb = this.neighborTile(t, d);
+					int lq = this.across(x, i, j, d);
+					
+					if( nb != -1 && ( reached[nb] == null || !reached[nb][lq] ) )
+					{
+						entered.get(nb).add(lq);
+						
+						if( !queued[nb] )
+						{
+							queued[nb] = true;
+							work.add(nb);
+						}
+					}
+				}
+			}
+			
+			this.release(t);
+		}
+		
+		BitSet visited = new BitSet(this.nodeCount() + 1);
+		
+		visited.set(1);
+		
+		for( int t = 0; t < count; ++t )
+		{
+			int row = ( t / this.tileCols ) * this.size, col = ( t % this.tileCols ) * this.size;
+			int width = Math.min(this.size, this.cols() - col);
+			
+			for( int p = 0; p < reached[t].length; ++p )
+			{
+				if( reached[t][p] )
+				{
+					visited.set(( row + p / width ) * this.cols() + col + p % width + 2);
+				}
+			}
+		}
+		
+		return visited;
+	}
+	
+	/*
+	 * local pixel next to (i, j) in direction d inside the tile, -1 if it lies outside the tile
+	 */
+	int inside(Tile x, int i, int j, int d)
+	{
+		switch( d )
+		{
+			case 0:
+				return j + 1 < x.width ? i * x.width + j + 1 : -1;
+			case 1:
+				return j > 0 ? i * x.width + j - 1 : -1;
+			case 2:
+				return i + 1 < x.height ? ( i + 1 ) * x.width + j : -1;
+			case 3:
+				return i > 0 ? ( i - 1 ) * x.width + j : -1;
+			default:
+				return -1;
+		}
+	}
+	
+	/*
+	 * tile next to tile t in direction d, -1 at the border of the grid
+	 */
+	int neighborTile(int t, int d)
+	{
+		int tr = t / this.tileCols, tc = t % this.tileCols;
+		
+		switch( d )
+		{
+			case 0:
+				return tc + 1 < this.tileCols ? t + 1 : -1;
+			case 1:
+				return tc > 0 ? t - 1 : -1;
+			case 2:
+				return tr + 1 < this.tileRows ? t + this.tileCols : -1;
+			case 3:
+				return tr > 0 ? t - this.tileCols : -1;
+			default:
+				return -1;
+		}
+	}
+	
+	/*
+	 * local index, in the neighboring tile, of the pixel next to border pixel (i, j) in direction d
+	 */
+	int across(Tile x, int i, int j, int d)
+	{
+		switch( d )
+		{
+			case 0:
+				return i * Math.min(this.size, this.cols() - x.col - x.width);
+			case 1:
+				return i * this.size + this.size - 1;
+			case 2:
+				return j;
+			case 3:
+				return ( this.size - 1 ) * x.width + j;
+			default:
+				return -1;
+		}
+	}
+}